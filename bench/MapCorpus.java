@@ -0,0 +1,127 @@
+import java.util.ArrayDeque;
+import java.util.Random;
+
+// Seeded collision grids (1 = wall, 0 = walkable) for the pathfinding benchmarks.
+// Every map keeps (1, 1) and (size - 2, size - 2) walkable, which the
+// benchmarks use as the long-distance query.
+public final class MapCorpus {
+
+    public enum Kind {
+        OPEN,           // border wall and a few scattered obstacles
+        MAZE,           // perfect maze, one corridor between any two cells
+        ROOMS,          // rooms joined by doors in the shared walls
+        UNREACHABLE     // open field, destination sealed in a walled box
+    }
+
+    private MapCorpus() {
+    }
+
+    public static int[][] generate(Kind kind, int size, long seed) {
+        Random rand = new Random(seed);
+        switch (kind) {
+            case OPEN:
+                return open(size, rand);
+            case MAZE:
+                return maze(size, rand);
+            case ROOMS:
+                return rooms(size, rand);
+            default:
+                return unreachable(size, rand);
+        }
+    }
+
+    private static int[][] bordered(int size) {
+        int[][] grid = new int[size][size];
+        for (int i = 0; i < size; i++) {
+            grid[0][i] = 1;
+            grid[size - 1][i] = 1;
+            grid[i][0] = 1;
+            grid[i][size - 1] = 1;
+        }
+        return grid;
+    }
+
+    private static int[][] open(int size, Random rand) {
+        int[][] grid = bordered(size);
+        for (int i = 0; i < size * size / 20; i++) {
+            grid[1 + rand.nextInt(size - 2)][1 + rand.nextInt(size - 2)] = 1;
+        }
+        grid[1][1] = 0;
+        grid[size - 2][size - 2] = 0;
+        return grid;
+    }
+
+    // iterative recursive backtracker over the odd cells
+    private static int[][] maze(int size, Random rand) {
+        int[][] grid = new int[size][size];
+        for (int[] row : grid) {
+            java.util.Arrays.fill(row, 1);
+        }
+        int cells = (size - 1) / 2;
+        ArrayDeque<int[]> stack = new ArrayDeque<>();
+        grid[1][1] = 0;
+        stack.push(new int[]{0, 0});
+        int[][] dirs = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (!stack.isEmpty()) {
+            int[] cell = stack.peek();
+            int start = rand.nextInt(4);
+            boolean moved = false;
+            for (int k = 0; k < 4 && !moved; k++) {
+                int[] d = dirs[(start + k) & 3];
+                int nx = cell[0] + d[0];
+                int ny = cell[1] + d[1];
+                if (nx < 0 || ny < 0 || nx >= cells || ny >= cells || grid[2 * ny + 1][2 * nx + 1] == 0) {
+                    continue;
+                }
+                grid[2 * cell[1] + 1 + d[1]][2 * cell[0] + 1 + d[0]] = 0;
+                grid[2 * ny + 1][2 * nx + 1] = 0;
+                stack.push(new int[]{nx, ny});
+                moved = true;
+            }
+            if (!moved) {
+                stack.pop();
+            }
+        }
+        // even sizes leave the last row/column solid, open the corner the queries use
+        grid[size - 2][size - 2] = 0;
+        grid[size - 2][size - 3] = 0;
+        return grid;
+    }
+
+    // 16x16 rooms, every shared wall gets one door at a random spot
+    private static int[][] rooms(int size, Random rand) {
+        int[][] grid = bordered(size);
+        int room = 16;
+        for (int w = room; w < size - 1; w += room) {
+            for (int i = 0; i < size; i++) {
+                grid[w][i] = 1;
+                grid[i][w] = 1;
+            }
+        }
+        for (int w = room; w < size - 1; w += room) {
+            for (int start = 0; start < size - 1; start += room) {
+                int door = start + 1 + rand.nextInt(room - 1);
+                if (door < size - 1) {
+                    grid[w][door] = 0;
+                    grid[door][w] = 0;
+                }
+            }
+        }
+        grid[1][1] = 0;
+        grid[size - 2][size - 2] = 0;
+        return grid;
+    }
+
+    private static int[][] unreachable(int size, Random rand) {
+        int[][] grid = open(size, rand);
+        int c = size - 2;
+        for (int i = c - 2; i <= c + 1; i++) {
+            for (int j = c - 2; j <= c + 1; j++) {
+                if (i >= 0 && j >= 0 && i < size && j < size && (Math.abs(i - c) == 2 || Math.abs(j - c) == 2)) {
+                    grid[i][j] = 1;
+                }
+            }
+        }
+        return grid;
+    }
+}
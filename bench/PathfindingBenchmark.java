@@ -0,0 +1,168 @@
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// JMH suite for the path searches on the MapCorpus maps.
+// Run with "-prof gc" to get the allocation rate next to throughput and the
+// sample-time percentiles, and narrow the matrix with -p, e.g.
+// "-p size=1024 -p kind=MAZE -p engine=JPS -p backing=BITS".
+// Every searcher has its own state, so HPA* and the flow field are not
+// rebuilt and re-measured once per A* engine value.
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathfindingBenchmark {
+
+    private static final int QUERIES = 256;
+
+    // one corpus map and random walkable (src, dst) pairs on it; the UNREACHABLE map always targets the sealed corner
+    public abstract static class Queries {
+
+        @Param({"OPEN", "MAZE", "ROOMS", "UNREACHABLE"})
+        public MapCorpus.Kind kind;
+
+        int[][] grid;
+        final int[] queries = new int[QUERIES * 4];
+        private int next;
+
+        void generate(int size) {
+            grid = MapCorpus.generate(kind, size, 42);
+
+            Random rand = new Random(7);
+            for (int i = 0; i < QUERIES; i++) {
+                queries[i * 4] = 1;
+                queries[i * 4 + 1] = 1;
+                queries[i * 4 + 2] = size - 2;
+                queries[i * 4 + 3] = size - 2;
+                if (kind != MapCorpus.Kind.UNREACHABLE && i > 0) {
+                    for (int k = 0; k < 4; k += 2) {
+                        int x;
+                        int y;
+                        do {
+                            x = rand.nextInt(size);
+                            y = rand.nextInt(size);
+                        } while (grid[y][x] == 1);
+                        queries[i * 4 + k] = x;
+                        queries[i * 4 + k + 1] = y;
+                    }
+                }
+            }
+        }
+
+        int nextQuery() {
+            int q = next;
+            next = (next + 1) % QUERIES;
+            return q * 4;
+        }
+    }
+
+    // how the engine reads the map: the int[][] it was generated as, or packed into a BitGrid
+    public enum Backing {
+        ARRAY,
+        BITS
+    }
+
+    @State(Scope.Thread)
+    public static class Engines extends Queries {
+
+        @Param({"64", "256", "1024", "4096"})
+        public int size;
+
+        @Param({"PRIMITIVE", "JPS", "BIDIRECTIONAL"})
+        public AStar.Engine engine;
+
+        @Param({"ARRAY", "BITS"})
+        public Backing backing;
+
+        AStar aStar;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            generate(size);
+            aStar = backing == Backing.BITS ? new AStar(BitGrid.fromArray(grid), engine) : new AStar(grid, engine);
+        }
+    }
+
+    // the object-graph baseline, without 4096 x 4096 where one trial takes minutes
+    @State(Scope.Thread)
+    public static class ObjectEngine extends Queries {
+
+        @Param({"64", "256", "1024"})
+        public int size;
+
+        AStar aStar;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            generate(size);
+            aStar = new AStar(grid, AStar.Engine.OBJECT);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Hierarchy extends Queries {
+
+        @Param({"64", "256", "1024", "4096"})
+        public int size;
+
+        HierarchicalAStar hierarchy;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            generate(size);
+            hierarchy = new HierarchicalAStar(BitGrid.fromArray(grid), 16);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Flow extends Queries {
+
+        @Param({"64", "256", "1024", "4096"})
+        public int size;
+
+        FlowField flowField;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            generate(size);
+            flowField = new FlowField(BitGrid.fromArray(grid));
+        }
+    }
+
+    @Benchmark
+    public List<AStar.Node> findPath(Engines s) {
+        int q = s.nextQuery();
+        return s.aStar.findPath(s.queries[q], s.queries[q + 1], s.queries[q + 2], s.queries[q + 3]);
+    }
+
+    @Benchmark
+    public List<AStar.Node> findPathObject(ObjectEngine s) {
+        int q = s.nextQuery();
+        return s.aStar.findPath(s.queries[q], s.queries[q + 1], s.queries[q + 2], s.queries[q + 3]);
+    }
+
+    @Benchmark
+    public int[] hierarchicalAbstractPath(Hierarchy s) {
+        int q = s.nextQuery();
+        return s.hierarchy.findAbstractPath(s.queries[q], s.queries[q + 1], s.queries[q + 2], s.queries[q + 3]);
+    }
+
+    // waypoints and every refined hop, what a caller that needs all tiles at once pays
+    @Benchmark
+    public List<AStar.Node> hierarchicalFindPath(Hierarchy s) {
+        int q = s.nextQuery();
+        return s.hierarchy.findPath(s.queries[q], s.queries[q + 1], s.queries[q + 2], s.queries[q + 3]);
+    }
+
+    // one full flow field rebuild per goal
+    @Benchmark
+    public FlowField flowFieldBuild(Flow s) {
+        int q = s.nextQuery();
+        s.flowField.build(s.queries[q + 2], s.queries[q + 3]);
+        return s.flowField;
+    }
+}
@@ -1,13 +1,14 @@
 import java.util.*;
 
-public class AStar {
+public class AStar implements PathFinder {
 
     // map size
     private final int maxX;
     private final int maxY;
 
-    // tile grid (1 = wall, 0 = walkable)
+    // tile grid (1 = wall, 0 = walkable), or the same as packed bits; exactly one is set
     private final int[][] grid;
+    private final BitGrid bits;
 
     // 4-directional movement (left, up, right, down)
     private final int[][] neighbours = {
@@ -17,10 +18,54 @@ public class AStar {
             {0, 1}     // down
     };
 
+    // search implementation used by findPath
+    public enum Engine {
+        OBJECT,         // Node objects, PriorityQueue and HashSet closed set
+        PRIMITIVE,      // flat int[] buffers reused per thread, only the result is allocated
+        JPS,            // jump point search on the primitive buffers, uniform-cost grids only
+        BIDIRECTIONAL   // primitive A* from both ends, stops early when either side runs dry
+    }
+
+    private final Engine engine;
+
+    // JPS only, null for the other engines: per direction, the tiles where a
+    // jump ends whatever the destination is (walls included), so a jump is one
+    // scan of 64 tiles per step. The vertical ones are transposed, column x is
+    // row x of a maxY-wide grid. See buildStops.
+    private final BitGrid stopsRight;
+    private final BitGrid stopsLeft;
+    private final BitGrid stopsDown;
+    private final BitGrid stopsUp;
+
     public AStar(int[][] grid) {
+        this(grid, Engine.OBJECT);
+    }
+
+    public AStar(int[][] grid, Engine engine) {
         this.grid = grid;
+        this.bits = null;
         this.maxX = grid[0].length;
         this.maxY = grid.length;
+        this.engine = engine;
+        this.stopsRight = engine == Engine.JPS ? new BitGrid(maxX, maxY) : null;
+        this.stopsLeft = engine == Engine.JPS ? new BitGrid(maxX, maxY) : null;
+        this.stopsDown = engine == Engine.JPS ? new BitGrid(maxY, maxX) : null;
+        this.stopsUp = engine == Engine.JPS ? new BitGrid(maxY, maxX) : null;
+        buildStops();
+    }
+
+    // searches straight on a bit-packed grid, no int[][] copy of the map is kept
+    public AStar(BitGrid bits, Engine engine) {
+        this.grid = null;
+        this.bits = bits;
+        this.maxX = bits.getWidth();
+        this.maxY = bits.getHeight();
+        this.engine = engine;
+        this.stopsRight = engine == Engine.JPS ? new BitGrid(maxX, maxY) : null;
+        this.stopsLeft = engine == Engine.JPS ? new BitGrid(maxX, maxY) : null;
+        this.stopsDown = engine == Engine.JPS ? new BitGrid(maxY, maxX) : null;
+        this.stopsUp = engine == Engine.JPS ? new BitGrid(maxY, maxX) : null;
+        buildStops();
     }
 
     // ------------------------------
@@ -67,7 +112,21 @@ public class Node {
     // ------------------------------
     // A* algorithm
     // ------------------------------
+    @Override
     public List<Node> findPath(int srcX, int srcY, int dstX, int dstY) {
+        if (engine == Engine.PRIMITIVE) {
+            return findPathPrimitive(srcX, srcY, dstX, dstY);
+        }
+        if (engine == Engine.JPS) {
+            return findPathJps(srcX, srcY, dstX, dstY);
+        }
+        if (engine == Engine.BIDIRECTIONAL) {
+            return findPathBidirectional(srcX, srcY, dstX, dstY);
+        }
+        return findPathObject(srcX, srcY, dstX, dstY);
+    }
+
+    private List<Node> findPathObject(int srcX, int srcY, int dstX, int dstY) {
         List<Node> path = new ArrayList<>();
         PriorityQueue<Node> openSet = new PriorityQueue<>(Comparator.comparingInt(AStar.Node::getFScore));
         openSet.add(new Node(srcX, srcY));
@@ -90,7 +149,7 @@ public class Node {
                 int y = current.y + neighbour[1];
 
                 // check bounds and walkability
-                if (x < 0 || x >= maxX || y < 0 || y >= maxY || grid[y][x] == 1) {
+                if (x < 0 || x >= maxX || y < 0 || y >= maxY || isWall(x, y)) {
                     continue;
                 }
                 AStar.Node neighbor = new AStar.Node(x, y);
@@ -109,5 +168,378 @@ public class Node {
         }
         return null;
     }
-}
 
+    // ------------------------------
+    // A* on primitive buffers
+    // ------------------------------
+    private List<Node> findPathPrimitive(int srcX, int srcY, int dstX, int dstY) {
+        if (!inBounds(srcX, srcY) || !inBounds(dstX, dstY)) {
+            return null;
+        }
+        SearchScratch s = SearchScratch.acquire(maxX * maxY);
+        int src = srcY * maxX + srcX;
+        int dst = dstY * maxX + dstX;
+        s.relax(src, 0, -1);
+        s.push(src, Math.abs(srcX - dstX) + Math.abs(srcY - dstY));
+
+        while (!s.heapEmpty()) {
+            int current = s.poll();
+            if (s.isClosed(current)) {
+                continue; // stale heap entry
+            }
+            if (current == dst) {
+                return buildPath(s, dst);
+            }
+            s.close(current);
+
+            int cx = current % maxX;
+            int cy = current / maxX;
+            int newGScore = s.gScore[current] + 1;
+            for (int[] neighbour : neighbours) {
+                int x = cx + neighbour[0];
+                int y = cy + neighbour[1];
+                if (x < 0 || x >= maxX || y < 0 || y >= maxY || isWall(x, y)) {
+                    continue;
+                }
+                int cell = y * maxX + x;
+                if (s.isClosed(cell)) {
+                    continue;
+                }
+                if (!s.isOpen(cell) || newGScore < s.gScore[cell]) {
+                    s.relax(cell, newGScore, current);
+                    s.push(cell, newGScore + Math.abs(x - dstX) + Math.abs(y - dstY));
+                }
+            }
+        }
+        return null;
+    }
+
+    // destination-first list of linked Nodes, same shape as the object search returns.
+    // Consecutive parents may be several tiles apart (jump points), the straight
+    // run between them is filled in tile by tile.
+    private List<Node> buildPath(SearchScratch s, int dst) {
+        List<Node> path = new ArrayList<>(s.gScore[dst] + 1);
+        Node previous = null;
+        for (int cell = dst; cell != -1; cell = s.parent[cell]) {
+            int x = cell % maxX;
+            int y = cell / maxX;
+            int from = s.parent[cell];
+            int steps = from == -1 ? 0 : Math.abs(from % maxX - x) + Math.abs(from / maxX - y);
+            int dx = from == -1 ? 0 : Integer.signum(from % maxX - x);
+            int dy = from == -1 ? 0 : Integer.signum(from / maxX - y);
+            for (int i = 0; i < Math.max(steps, 1); i++) {
+                Node node = new Node(x + dx * i, y + dy * i);
+                node.gScore = s.gScore[cell] - i;
+                if (previous != null) {
+                    previous.parent = node;
+                }
+                path.add(node);
+                previous = node;
+            }
+        }
+        return path;
+    }
+
+    // ------------------------------
+    // Bidirectional A*
+    // ------------------------------
+    // Forward search from the source and backward search from the destination,
+    // always expanding the side with the smaller frontier. best is the cheapest
+    // complete route seen where the frontiers touched. With a consistent
+    // heuristic every cheaper route still has an open node on each side with
+    // f <= its cost, so once either side's smallest f reaches best, best is
+    // optimal. If one side runs out of nodes the goal is unreachable, which for
+    // a source or destination sealed in a small room happens long before the
+    // other side would have flooded the map.
+    private List<Node> findPathBidirectional(int srcX, int srcY, int dstX, int dstY) {
+        if (!inBounds(srcX, srcY) || !inBounds(dstX, dstY)) {
+            return null;
+        }
+        SearchScratch fwd = SearchScratch.acquire(maxX * maxY);
+        SearchScratch bwd = SearchScratch.acquireSecondary(maxX * maxY);
+        int src = srcY * maxX + srcX;
+        int dst = dstY * maxX + dstX;
+        fwd.relax(src, 0, -1);
+        fwd.push(src, Math.abs(srcX - dstX) + Math.abs(srcY - dstY));
+        bwd.relax(dst, 0, -1);
+        bwd.push(dst, Math.abs(srcX - dstX) + Math.abs(srcY - dstY));
+
+        int best = src == dst ? 0 : Integer.MAX_VALUE;
+        int meet = src == dst ? src : -1;
+        while (!fwd.heapEmpty() && !bwd.heapEmpty()) {
+            if (fwd.peekKey() >= best || bwd.peekKey() >= best) {
+                break;
+            }
+            boolean forward = fwd.heapSize() <= bwd.heapSize();
+            SearchScratch s = forward ? fwd : bwd;
+            SearchScratch other = forward ? bwd : fwd;
+            int targetX = forward ? dstX : srcX;
+            int targetY = forward ? dstY : srcY;
+
+            int current = s.poll();
+            if (s.isClosed(current)) {
+                continue;
+            }
+            s.close(current);
+
+            int cx = current % maxX;
+            int cy = current / maxX;
+            int newGScore = s.gScore[current] + 1;
+            for (int[] neighbour : neighbours) {
+                int x = cx + neighbour[0];
+                int y = cy + neighbour[1];
+                if (x < 0 || x >= maxX || y < 0 || y >= maxY || isWall(x, y)) {
+                    continue;
+                }
+                int cell = y * maxX + x;
+                if (s.isClosed(cell)) {
+                    continue;
+                }
+                if (!s.isOpen(cell) || newGScore < s.gScore[cell]) {
+                    s.relax(cell, newGScore, current);
+                    s.push(cell, newGScore + Math.abs(x - targetX) + Math.abs(y - targetY));
+                    if (other.isOpen(cell) && newGScore + other.gScore[cell] < best) {
+                        best = newGScore + other.gScore[cell];
+                        meet = cell;
+                    }
+                }
+            }
+        }
+        if (meet == -1) {
+            return null;
+        }
+
+        // meet .. destination from the backward parents, flipped to destination first,
+        // followed by meet .. source from the forward parents
+        List<Node> path = new ArrayList<>(best + 1);
+        for (int cell = bwd.parent[meet]; cell != -1; cell = bwd.parent[cell]) {
+            Node node = new Node(cell % maxX, cell / maxX);
+            node.gScore = best - bwd.gScore[cell];
+            path.add(node);
+        }
+        Collections.reverse(path);
+        for (int cell = meet; cell != -1; cell = fwd.parent[cell]) {
+            Node node = new Node(cell % maxX, cell / maxX);
+            node.gScore = fwd.gScore[cell];
+            path.add(node);
+        }
+        for (int k = 0; k < path.size() - 1; k++) {
+            path.get(k).parent = path.get(k + 1);
+        }
+        return path;
+    }
+
+    // ------------------------------
+    // Jump point search (4-directional)
+    // ------------------------------
+    // Canonical paths move vertically first and only turn horizontal when a
+    // horizontal scan from the column reaches something interesting, so only
+    // jump points are pushed on the heap instead of every tile.
+    private List<Node> findPathJps(int srcX, int srcY, int dstX, int dstY) {
+        if (!inBounds(srcX, srcY) || !inBounds(dstX, dstY)) {
+            return null;
+        }
+        SearchScratch s = SearchScratch.acquire(maxX * maxY);
+        int src = srcY * maxX + srcX;
+        int dst = dstY * maxX + dstX;
+        s.relax(src, 0, -1);
+        s.push(src, Math.abs(srcX - dstX) + Math.abs(srcY - dstY));
+
+        while (!s.heapEmpty()) {
+            int current = s.poll();
+            if (s.isClosed(current)) {
+                continue;
+            }
+            if (current == dst) {
+                return buildPath(s, dst);
+            }
+            s.close(current);
+
+            int cx = current % maxX;
+            int cy = current / maxX;
+            int from = s.parent[current];
+            int pdx = from == -1 ? 0 : Integer.signum(cx - from % maxX);
+            int pdy = from == -1 ? 0 : Integer.signum(cy - from / maxX);
+            for (int[] neighbour : neighbours) {
+                int dx = neighbour[0];
+                int dy = neighbour[1];
+                if (from != -1 && dx == -pdx && dy == -pdy) {
+                    continue; // never step back towards the parent
+                }
+                if (pdx != 0 && dy != 0 && !opensAfter(cx, cy + dy, -pdx, 0)) {
+                    continue; // reached moving sideways: turn only where a wall forces it, vertical comes first
+                }
+                int jump = jump(cx + dx, cy + dy, dx, dy, dstX, dstY);
+                if (jump == -1 || s.isClosed(jump)) {
+                    continue;
+                }
+                int jx = jump % maxX;
+                int jy = jump / maxX;
+                int newGScore = s.gScore[current] + Math.abs(jx - cx) + Math.abs(jy - cy);
+                if (!s.isOpen(jump) || newGScore < s.gScore[jump]) {
+                    s.relax(jump, newGScore, current);
+                    s.push(jump, newGScore + Math.abs(jx - dstX) + Math.abs(jy - dstY));
+                }
+            }
+        }
+        return null;
+    }
+
+    // walks from (x, y) in direction (dx, dy) and returns the first jump point cell, or -1
+    private int jump(int x, int y, int dx, int dy, int dstX, int dstY) {
+        return dy != 0 ? jumpColumn(x, y, dy, dstX, dstY) : jumpRow(x, y, dx, dstX, dstY);
+    }
+
+    // The horizontal jump, one scan of the row's stop bits: the first forced
+    // neighbour or the wall that ends the run, unless the destination comes first.
+    private int jumpRow(int x, int y, int dx, int dstX, int dstY) {
+        if (!walkable(x, y)) {
+            return -1;
+        }
+        if (dx > 0) {
+            int found = stopsRight.nextWall(x, y);
+            if (y == dstY && dstX >= x && dstX < found) {
+                return y * maxX + dstX;
+            }
+            return found < maxX && !isWall(found, y) ? y * maxX + found : -1;
+        }
+        int found = stopsLeft.previousWall(x, y);
+        if (y == dstY && dstX <= x && dstX > found) {
+            return y * maxX + dstX;
+        }
+        return found >= 0 && !isWall(found, y) ? y * maxX + found : -1;
+    }
+
+    // The vertical jump, the same on the column's stop bits. A vertical stop is
+    // also any tile a horizontal jump would leave the column from, so the
+    // destination's row only ends it when the destination is straight along that row.
+    private int jumpColumn(int x, int y, int dy, int dstX, int dstY) {
+        if (!walkable(x, y)) {
+            return -1;
+        }
+        if (dy > 0) {
+            int found = stopsDown.nextWall(y, x);
+            if (dstY >= y && dstY < found && sameRun(x, dstX, dstY)) {
+                return dstY * maxX + x;
+            }
+            return found < maxY && !isWall(x, found) ? found * maxX + x : -1;
+        }
+        int found = stopsUp.previousWall(y, x);
+        if (dstY <= y && dstY > found && sameRun(x, dstX, dstY)) {
+            return dstY * maxX + x;
+        }
+        return found >= 0 && !isWall(x, found) ? found * maxX + x : -1;
+    }
+
+    // true when nothing blocks row y between x and toX (both walkable)
+    private boolean sameRun(int x, int toX, int y) {
+        if (bits != null) {
+            return toX >= x ? bits.nextWall(x, y) > toX : bits.previousWall(x, y) < toX;
+        }
+        int step = Integer.signum(toX - x);
+        for (int i = x; i != toX; i += step) {
+            if (grid[y][i + step] == 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------
+    // JPS stops
+    // ------------------------------
+    // Tile (x, y) of the map was changed after construction. The JPS stop bits
+    // of a row depend on the rows above and below it too, so those three rows are
+    // recomputed; the other engines read the map directly and need no call.
+    public void cellChanged(int x, int y) {
+        if (engine != Engine.JPS) {
+            return;
+        }
+        for (int row = Math.max(0, y - 1); row <= Math.min(maxY - 1, y + 1); row++) {
+            buildStops(row);
+        }
+    }
+
+    private void buildStops() {
+        if (engine == Engine.JPS) {
+            for (int y = 0; y < maxY; y++) {
+                buildStops(y);
+            }
+        }
+    }
+
+    // Stop bits of row y; walls are stops in every direction. A horizontal jump
+    // stops at a forced neighbour: a tile where row y - 1 or y + 1 turns walkable
+    // after a wall behind it. A vertical jump stops at its own forced neighbours
+    // and wherever a horizontal jump from the tile would find something further
+    // along the run. Only bits that change are written, so a search on another
+    // thread sees the other tiles as they were.
+    private void buildStops(int y) {
+        int runEnd = -1;
+        int lastRight = -1;
+        int firstLeft = maxX;
+        for (int x = 0; x < maxX; x++) {
+            boolean right = true;
+            boolean left = true;
+            boolean down = true;
+            boolean up = true;
+            if (walkable(x, y)) {
+                if (x >= runEnd) {
+                    // first tile of a new run: where its horizontal jumps find something
+                    lastRight = -1;
+                    firstLeft = maxX;
+                    for (runEnd = x; walkable(runEnd, y); runEnd++) {
+                        if (opensAfter(runEnd, y - 1, -1, 0) || opensAfter(runEnd, y + 1, -1, 0)) {
+                            lastRight = runEnd;
+                        }
+                        if (firstLeft == maxX && (opensAfter(runEnd, y - 1, 1, 0) || opensAfter(runEnd, y + 1, 1, 0))) {
+                            firstLeft = runEnd;
+                        }
+                    }
+                }
+                right = opensAfter(x, y - 1, -1, 0) || opensAfter(x, y + 1, -1, 0);
+                left = opensAfter(x, y - 1, 1, 0) || opensAfter(x, y + 1, 1, 0);
+                boolean horizontal = x < lastRight || x > firstLeft;
+                down = horizontal || opensAfter(x - 1, y, 0, -1) || opensAfter(x + 1, y, 0, -1);
+                up = horizontal || opensAfter(x - 1, y, 0, 1) || opensAfter(x + 1, y, 0, 1);
+            }
+            if (stopsRight.isWall(x, y) != right) {
+                stopsRight.setWall(x, y, right);
+            }
+            if (stopsLeft.isWall(x, y) != left) {
+                stopsLeft.setWall(x, y, left);
+            }
+            if (stopsDown.isWall(y, x) != down) {
+                stopsDown.setWall(y, x, down);
+            }
+            if (stopsUp.isWall(y, x) != up) {
+                stopsUp.setWall(y, x, up);
+            }
+        }
+    }
+
+    // (x, y) is walkable and its neighbour at (x + dx, y + dy) is not
+    private boolean opensAfter(int x, int y, int dx, int dy) {
+        return walkable(x, y) && !walkable(x + dx, y + dy);
+    }
+
+    private boolean walkable(int x, int y) {
+        return inBounds(x, y) && !isWall(x, y);
+    }
+
+    private boolean isWall(int x, int y) {
+        return bits != null ? bits.isWall(x, y) : grid[y][x] == 1;
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < maxX && y >= 0 && y < maxY;
+    }
+
+    public int getMaxX() {
+        return this.maxX;
+    }
+
+    public int getMaxY() {
+        return this.maxY;
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Checks every AStar engine against a breadth-first search on random grids,
+// built both from an int[][] and from a BitGrid. The object-graph engine
+// (OBJECT) is the old baseline and does not promise shortest paths, so for it
+// only reachability and path validity are checked.
+public class AStarTest {
+
+    private static final int GRIDS = 3000;
+
+    public static void main(String[] args) {
+        System.out.println("=== Testing AStar engines against BFS ===\n");
+
+        Random rand = new Random(1);
+        int[] found = new int[AStar.Engine.values().length];
+        for (int t = 0; t < GRIDS; t++) {
+            int maxX = 1 + rand.nextInt(48);
+            int maxY = 1 + rand.nextInt(48);
+            double density = rand.nextDouble() * 0.45;
+            int[][] grid = new int[maxY][maxX];
+            for (int y = 0; y < maxY; y++) {
+                for (int x = 0; x < maxX; x++) {
+                    grid[y][x] = rand.nextDouble() < density ? 1 : 0;
+                }
+            }
+            int srcX = rand.nextInt(maxX);
+            int srcY = rand.nextInt(maxY);
+            int dstX = rand.nextInt(maxX);
+            int dstY = rand.nextInt(maxY);
+            grid[srcY][srcX] = 0;
+            grid[dstY][dstX] = 0;
+            BitGrid bits = BitGrid.fromArray(grid);
+            int expected = bfs(grid, srcX, srcY, dstX, dstY);
+
+            for (AStar.Engine engine : AStar.Engine.values()) {
+                String what = engine + " on " + maxX + "x" + maxY + " grid " + t;
+                List<AStar.Node> fromArray = new AStar(grid, engine).findPath(srcX, srcY, dstX, dstY);
+                verify(grid, fromArray, engine, expected, srcX, srcY, dstX, dstY, what + " (int[][])");
+                List<AStar.Node> fromBits = new AStar(bits, engine).findPath(srcX, srcY, dstX, dstY);
+                verify(grid, fromBits, engine, expected, srcX, srcY, dstX, dstY, what + " (BitGrid)");
+                if (fromArray != null) {
+                    found[engine.ordinal()]++;
+                }
+            }
+        }
+
+        for (AStar.Engine engine : AStar.Engine.values()) {
+            String result = engine == AStar.Engine.OBJECT ? " finds valid paths, " : " matches BFS, ";
+            System.out.println("  ok: " + engine + result + found[engine.ordinal()] + " of " + GRIDS + " goals reachable");
+        }
+        System.out.println("\n✅ AStar test completed successfully!");
+    }
+
+    // the path must list the destination first, end at the source, only step to
+    // 4-neighbouring walkable tiles and, for the shortest-path engines, be as long as BFS says
+    private static void verify(int[][] grid, List<AStar.Node> path, AStar.Engine engine, int expected,
+                               int srcX, int srcY, int dstX, int dstY, String what) {
+        check((path != null) == (expected != -1), what + ": reachable is " + (expected != -1));
+        if (path == null) {
+            return;
+        }
+        check(!path.isEmpty(), what + ": empty path");
+        AStar.Node first = path.get(0);
+        AStar.Node last = path.get(path.size() - 1);
+        check(first.x == dstX && first.y == dstY, what + ": starts at the destination");
+        check(last.x == srcX && last.y == srcY, what + ": ends at the source");
+        for (int i = 0; i < path.size(); i++) {
+            AStar.Node node = path.get(i);
+            check(grid[node.y][node.x] == 0, what + ": walks through a wall at " + node.x + "," + node.y);
+            if (i > 0) {
+                AStar.Node previous = path.get(i - 1);
+                check(Math.abs(node.x - previous.x) + Math.abs(node.y - previous.y) == 1, what + ": jumps at step " + i);
+            }
+        }
+        if (engine == AStar.Engine.OBJECT) {
+            check(path.size() - 1 >= expected, what + ": shorter than BFS");
+        } else {
+            check(path.size() - 1 == expected, what + ": " + (path.size() - 1) + " steps, BFS needs " + expected);
+        }
+    }
+
+    // steps from source to destination, -1 when they are not connected
+    private static int bfs(int[][] grid, int srcX, int srcY, int dstX, int dstY) {
+        int maxX = grid[0].length;
+        int maxY = grid.length;
+        int[] distance = new int[maxX * maxY];
+        Arrays.fill(distance, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        distance[srcY * maxX + srcX] = 0;
+        queue.add(srcY * maxX + srcX);
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            int x = cell % maxX;
+            int y = cell / maxX;
+            if (x == dstX && y == dstY) {
+                return distance[cell];
+            }
+            for (int d = 0; d < 4; d++) {
+                int nx = x + (d == 0 ? -1 : d == 2 ? 1 : 0);
+                int ny = y + (d == 1 ? -1 : d == 3 ? 1 : 0);
+                if (nx < 0 || nx >= maxX || ny < 0 || ny >= maxY || grid[ny][nx] == 1) {
+                    continue;
+                }
+                int next = ny * maxX + nx;
+                if (distance[next] == -1) {
+                    distance[next] = distance[cell] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("FAILED: " + what);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Collision grid with one bit per tile (1 = wall, 0 = walkable), packed into
+// long words row by row. A 4096x4096 map takes 2 MB instead of the 64 MB of
+// an int[][], and a row can be scanned 64 tiles at a time.
+//
+// File layout used by load/save: int width, int height, then every row as
+// ceil(width / 64) big-endian longs, bit (x % 64) of word (x / 64) = tile x.
+public class BitGrid {
+
+    private final int width;
+    private final int height;
+    private final int wordsPerRow;
+    private final long[] words;
+
+    public BitGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.wordsPerRow = (width + 63) >>> 6;
+        this.words = new long[wordsPerRow * height];
+    }
+
+    public static BitGrid fromArray(int[][] grid) {
+        BitGrid bits = new BitGrid(grid[0].length, grid.length);
+        for (int y = 0; y < bits.height; y++) {
+            for (int x = 0; x < bits.width; x++) {
+                if (grid[y][x] == 1) {
+                    bits.setWall(x, y, true);
+                }
+            }
+        }
+        return bits;
+    }
+
+    // ------------------------------
+    // tile access
+    // ------------------------------
+    public boolean isWall(int x, int y) {
+        return (words[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    // bounds-checked, outside the map counts as not walkable
+    public boolean isWalkable(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height && !isWall(x, y);
+    }
+
+    public void setWall(int x, int y, boolean wall) {
+        int i = y * wordsPerRow + (x >>> 6);
+        if (wall) {
+            words[i] |= 1L << x;
+        } else {
+            words[i] &= ~(1L << x);
+        }
+    }
+
+    // ------------------------------
+    // row scans
+    // ------------------------------
+    // first wall at or right of x in row y, or width if there is none
+    public int nextWall(int x, int y) {
+        return nextBit(x, y, 0L);
+    }
+
+    // first walkable tile at or right of x in row y, or width if there is none
+    public int nextWalkable(int x, int y) {
+        return nextBit(x, y, -1L);
+    }
+
+    // first wall at or left of x in row y, or -1 if there is none
+    public int previousWall(int x, int y) {
+        return previousBit(x, y, 0L);
+    }
+
+    // first walkable tile at or left of x in row y, or -1 if there is none
+    public int previousWalkable(int x, int y) {
+        return previousBit(x, y, -1L);
+    }
+
+    // walkable tiles in row y
+    public int countWalkable(int y) {
+        int walls = 0;
+        for (int w = 0; w < wordsPerRow; w++) {
+            walls += Long.bitCount(words[y * wordsPerRow + w]);
+        }
+        return width - walls;
+    }
+
+    // flip = 0 searches for set bits (walls), flip = -1 for clear bits (walkable)
+    private int nextBit(int x, int y, long flip) {
+        if (x >= width) {
+            return width;
+        }
+        int row = y * wordsPerRow;
+        int w = x >>> 6;
+        long word = (words[row + w] ^ flip) & (-1L << x);
+        while (true) {
+            if (word != 0) {
+                return Math.min(width, (w << 6) + Long.numberOfTrailingZeros(word));
+            }
+            if (++w == wordsPerRow) {
+                return width;
+            }
+            word = words[row + w] ^ flip;
+        }
+    }
+
+    private int previousBit(int x, int y, long flip) {
+        if (x < 0) {
+            return -1;
+        }
+        int row = y * wordsPerRow;
+        int w = x >>> 6;
+        long word = (words[row + w] ^ flip) & (-1L >>> (63 - (x & 63)));
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+            if (w-- == 0) {
+                return -1;
+            }
+            word = words[row + w] ^ flip;
+        }
+    }
+
+    // ------------------------------
+    // files
+    // ------------------------------
+    // Maps the file read-only and bulk-copies the packed rows, so large maps
+    // load without stream decoding or per-tile work.
+    public static BitGrid load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            BitGrid bits = new BitGrid(width, height);
+            if (buffer.remaining() < (long) bits.words.length * Long.BYTES) {
+                throw new IOException("map file too short for " + width + "x" + height + ": " + file);
+            }
+            buffer.asLongBuffer().get(bits.words);
+            return bits;
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(2 * Integer.BYTES + words.length * Long.BYTES);
+            buffer.putInt(width).putInt(height);
+            LongBuffer longs = buffer.asLongBuffer();
+            longs.put(words);
+            buffer.position(buffer.position() + words.length * Long.BYTES).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+}
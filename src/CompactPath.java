@@ -0,0 +1,148 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+// A walking-order tile path stored as run-length direction codes.
+// Each int holds a direction (2 bits, AStar order: left, up, right, down) and
+// a run length, so a straight corridor of any length costs one int instead of
+// one Node per tile. A cursor hands out the cells one by one in O(1).
+// Instances are reusable: clear() keeps the run buffer, and Pool recycles them.
+public class CompactPath {
+
+    private static final int[] DX = {-1, 0, 1, 0};
+    private static final int[] DY = {0, -1, 0, 1};
+    private static final int LENGTH_MASK = (1 << 30) - 1;
+
+    private int width;
+    private int startX;
+    private int startY;
+    private int endX;
+    private int endY;
+    private int[] runs = new int[8];
+    private int runCount = 0;
+    private int length = 0;
+
+    // cursor: next cell to hand out, and the position inside the runs that follows it
+    private int cursorX;
+    private int cursorY;
+    private int run;
+    private int taken;
+    private int remaining;
+
+    // starts a new path at cell (startX, startY) on a map `width` tiles wide
+    public void clear(int width, int startX, int startY) {
+        this.width = width;
+        this.startX = startX;
+        this.startY = startY;
+        this.endX = startX;
+        this.endY = startY;
+        this.runCount = 0;
+        this.length = 1;
+        rewind();
+    }
+
+    // appends the next tile, which must be a 4-neighbour of the current last tile
+    public void append(int x, int y) {
+        int dx = x - endX;
+        int dy = y - endY;
+        int dir = dx == -1 ? 0 : dy == -1 ? 1 : dx == 1 ? 2 : 3;
+        if (Math.abs(dx) + Math.abs(dy) != 1) {
+            throw new IllegalArgumentException("(" + x + ", " + y + ") does not follow (" + endX + ", " + endY + ")");
+        }
+        if (runCount > 0 && runs[runCount - 1] >>> 30 == dir && (runs[runCount - 1] & LENGTH_MASK) < LENGTH_MASK) {
+            runs[runCount - 1]++;
+        } else {
+            if (runCount == runs.length) {
+                runs = Arrays.copyOf(runs, runCount * 2);
+            }
+            runs[runCount++] = dir << 30 | 1;
+        }
+        endX = x;
+        endY = y;
+        length++;
+        remaining++;
+    }
+
+    // back to the first tile
+    public void rewind() {
+        cursorX = startX;
+        cursorY = startY;
+        run = 0;
+        taken = 0;
+        remaining = length;
+    }
+
+    public boolean hasNext() {
+        return remaining > 0;
+    }
+
+    // next tile as cell (y * width + x); only valid while hasNext()
+    public int next() {
+        int cell = cursorY * width + cursorX;
+        remaining--;
+        if (remaining > 0) {
+            int dir = runs[run] >>> 30;
+            cursorX += DX[dir];
+            cursorY += DY[dir];
+            if (++taken == (runs[run] & LENGTH_MASK)) {
+                run++;
+                taken = 0;
+            }
+        }
+        return cell;
+    }
+
+    // tiles on the path, including the start
+    public int length() {
+        return this.length;
+    }
+
+    public int remaining() {
+        return this.remaining;
+    }
+
+    // ints used to store the route
+    public int getRunCount() {
+        return this.runCount;
+    }
+
+    // makes this an exact copy of `other`, cursor included
+    public void copyFrom(CompactPath other) {
+        width = other.width;
+        startX = other.startX;
+        startY = other.startY;
+        endX = other.endX;
+        endY = other.endY;
+        if (runs.length < other.runCount) {
+            runs = new int[other.runs.length];
+        }
+        System.arraycopy(other.runs, 0, runs, 0, other.runCount);
+        runCount = other.runCount;
+        length = other.length;
+        cursorX = other.cursorX;
+        cursorY = other.cursorY;
+        run = other.run;
+        taken = other.taken;
+        remaining = other.remaining;
+    }
+
+    // ------------------------------
+    // pooling
+    // ------------------------------
+    // Free list of paths for one game's tick thread; not thread-safe.
+    public static class Pool {
+        private final ArrayDeque<CompactPath> free = new ArrayDeque<>();
+
+        public CompactPath acquire() {
+            CompactPath path = free.poll();
+            return path != null ? path : new CompactPath();
+        }
+
+        public void release(CompactPath path) {
+            free.push(path);
+        }
+
+        public int size() {
+            return free.size();
+        }
+    }
+}
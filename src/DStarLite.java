@@ -0,0 +1,236 @@
+import java.util.Arrays;
+
+// Incremental planner (D* Lite) for one agent heading to one goal.
+// The search runs backwards from the goal, so g[cell] is the distance from
+// cell to the goal. When collision cells flip, cellChanged() only re-queues
+// the cells around the change and plan() repairs the affected part of the
+// search instead of starting over; moving the agent only bumps km.
+// Keeps two int[] per grid cell, so hold one per agent that actually has a
+// long-lived goal on a changing map, not one per bot.
+public class DStarLite {
+
+    private static final int INF = Integer.MAX_VALUE / 2;
+
+    // same order as AStar: left, up, right, down
+    private static final int[] DX = {-1, 0, 1, 0};
+    private static final int[] DY = {0, -1, 0, 1};
+
+    // collision map, edited by the owner who then reports each flip through cellChanged
+    private final BitGrid map;
+    private final int maxX;
+    private final int maxY;
+    private final int goal;
+
+    private final int[] g;
+    private final int[] rhs;
+    private int start;
+    private int km = 0;
+
+    // binary min-heap with lazy deletion, key = k1 << 32 | k2
+    private long[] heapKey = new long[64];
+    private int[] heapCell = new int[64];
+    private int heapSize = 0;
+
+    public DStarLite(BitGrid map, int startX, int startY, int goalX, int goalY) {
+        this.map = map;
+        this.maxX = map.getWidth();
+        this.maxY = map.getHeight();
+        this.goal = goalY * maxX + goalX;
+        this.start = startY * maxX + startX;
+        this.g = new int[maxX * maxY];
+        this.rhs = new int[maxX * maxY];
+        Arrays.fill(g, INF);
+        Arrays.fill(rhs, INF);
+        rhs[goal] = 0;
+        push(goal, key(goal));
+    }
+
+    // ------------------------------
+    // agent and map updates
+    // ------------------------------
+    // the agent is now at (x, y)
+    public void moveStart(int x, int y) {
+        int cell = y * maxX + x;
+        km += heuristic(start, cell);
+        start = cell;
+    }
+
+    // collision cell (x, y) flipped in the map; call plan() afterwards
+    public void cellChanged(int x, int y) {
+        int cell = y * maxX + x;
+        updateVertex(cell);
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (nx >= 0 && nx < maxX && ny >= 0 && ny < maxY) {
+                updateVertex(ny * maxX + nx);
+            }
+        }
+    }
+
+    // brings the search up to date for the current start, returns false if the goal cannot be reached
+    public boolean plan() {
+        while (heapSize > 0 && (heapKey[0] < key(start) || rhs[start] != g[start])) {
+            long oldKey = heapKey[0];
+            int u = poll();
+            if (g[u] == rhs[u]) {
+                continue; // stale entry, already consistent
+            }
+            long newKey = key(u);
+            if (oldKey < newKey) {
+                push(u, newKey);
+            } else if (g[u] > rhs[u]) {
+                g[u] = rhs[u];
+                updateNeighbours(u);
+            } else {
+                g[u] = INF;
+                updateVertex(u);
+                updateNeighbours(u);
+            }
+        }
+        return g[start] < INF;
+    }
+
+    // ------------------------------
+    // queries
+    // ------------------------------
+    // next cell (y * maxX + x) from the current start towards the goal, or -1 (call plan() first)
+    public int next() {
+        if (start == goal || g[start] >= INF) {
+            return -1;
+        }
+        int best = -1;
+        int bestCost = INF;
+        int sx = start % maxX;
+        int sy = start / maxX;
+        for (int d = 0; d < 4; d++) {
+            int x = sx + DX[d];
+            int y = sy + DY[d];
+            if (walkable(x, y) && g[y * maxX + x] + 1 < bestCost) {
+                best = y * maxX + x;
+                bestCost = g[best] + 1;
+            }
+        }
+        return best;
+    }
+
+    // cells from the current start to the goal in walking order, or null (call plan() first)
+    public int[] getPath() {
+        if (g[start] >= INF) {
+            return null;
+        }
+        int[] cells = new int[g[start] + 1];
+        int cell = start;
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = cell;
+            int sx = cell % maxX;
+            int sy = cell / maxX;
+            for (int d = 0; d < 4; d++) {
+                int x = sx + DX[d];
+                int y = sy + DY[d];
+                if (walkable(x, y) && g[y * maxX + x] == g[cell] - 1) {
+                    cell = y * maxX + x;
+                    break;
+                }
+            }
+        }
+        return cells;
+    }
+
+    // steps from the current start to the goal as of the last plan(), or -1
+    public int getDistance() {
+        return g[start] < INF ? g[start] : -1;
+    }
+
+    // ------------------------------
+    // internals
+    // ------------------------------
+    private void updateNeighbours(int u) {
+        int ux = u % maxX;
+        int uy = u / maxX;
+        for (int d = 0; d < 4; d++) {
+            int x = ux + DX[d];
+            int y = uy + DY[d];
+            if (x >= 0 && x < maxX && y >= 0 && y < maxY) {
+                updateVertex(y * maxX + x);
+            }
+        }
+    }
+
+    private void updateVertex(int u) {
+        if (u != goal) {
+            int best = INF;
+            int ux = u % maxX;
+            int uy = u / maxX;
+            if (!map.isWall(ux, uy)) {
+                for (int d = 0; d < 4; d++) {
+                    int x = ux + DX[d];
+                    int y = uy + DY[d];
+                    if (walkable(x, y)) {
+                        best = Math.min(best, g[y * maxX + x] + 1);
+                    }
+                }
+            }
+            rhs[u] = Math.min(best, INF);
+        }
+        if (g[u] != rhs[u]) {
+            push(u, key(u));
+        }
+    }
+
+    private long key(int u) {
+        int k2 = Math.min(g[u], rhs[u]);
+        int k1 = k2 >= INF ? INF : k2 + heuristic(start, u) + km;
+        return ((long) k1 << 32) | k2;
+    }
+
+    private int heuristic(int a, int b) {
+        return Math.abs(a % maxX - b % maxX) + Math.abs(a / maxX - b / maxX);
+    }
+
+    private boolean walkable(int x, int y) {
+        return x >= 0 && x < maxX && y >= 0 && y < maxY && !map.isWall(x, y);
+    }
+
+    private void push(int cell, long key) {
+        if (heapSize == heapKey.length) {
+            heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+            heapCell = Arrays.copyOf(heapCell, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heapKey[p] <= key) {
+                break;
+            }
+            heapKey[i] = heapKey[p];
+            heapCell[i] = heapCell[p];
+            i = p;
+        }
+        heapKey[i] = key;
+        heapCell[i] = cell;
+    }
+
+    private int poll() {
+        int top = heapCell[0];
+        long key = heapKey[--heapSize];
+        int cell = heapCell[heapSize];
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int c = 2 * i + 1;
+            if (c + 1 < heapSize && heapKey[c + 1] < heapKey[c]) {
+                c++;
+            }
+            if (key <= heapKey[c]) {
+                break;
+            }
+            heapKey[i] = heapKey[c];
+            heapCell[i] = heapCell[c];
+            i = c;
+        }
+        heapKey[i] = key;
+        heapCell[i] = cell;
+        return top;
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+// Walks an agent towards its goal on random grids while cells flip around it
+// and checks that every repaired plan matches a fresh D* Lite on the edited
+// map and a breadth-first search, and that its path is walkable.
+public class DStarLiteTest {
+
+    private static final int GRIDS = 500;
+    private static final int STEPS = 40;
+
+    public static void main(String[] args) {
+        System.out.println("=== Testing DStarLite replanning against fresh searches ===\n");
+
+        Random rand = new Random(4);
+        int plans = 0;
+        int unreachable = 0;
+        for (int t = 0; t < GRIDS; t++) {
+            int maxX = 2 + rand.nextInt(30);
+            int maxY = 2 + rand.nextInt(30);
+            BitGrid map = new BitGrid(maxX, maxY);
+            for (int y = 0; y < maxY; y++) {
+                for (int x = 0; x < maxX; x++) {
+                    map.setWall(x, y, rand.nextDouble() < 0.25);
+                }
+            }
+            int x = rand.nextInt(maxX);
+            int y = rand.nextInt(maxY);
+            int goalX = rand.nextInt(maxX);
+            int goalY = rand.nextInt(maxY);
+            map.setWall(x, y, false);
+            map.setWall(goalX, goalY, false);
+            DStarLite planner = new DStarLite(map, x, y, goalX, goalY);
+
+            for (int step = 0; step < STEPS; step++) {
+                String what = maxX + "x" + maxY + " grid " + t + " step " + step;
+                boolean reachable = planner.plan();
+                DStarLite fresh = new DStarLite(map, x, y, goalX, goalY);
+                fresh.plan();
+                int expected = bfs(map, x, y, goalX, goalY);
+                check(planner.getDistance() == fresh.getDistance(), what + ": repaired plan needs "
+                        + planner.getDistance() + " steps, a fresh one " + fresh.getDistance());
+                check(planner.getDistance() == expected, what + ": BFS needs " + expected + " steps");
+                check(reachable == (expected != -1), what + ": plan() reports reachability");
+                verifyPath(map, planner.getPath(), expected, goalY * maxX + goalX, what);
+                plans++;
+                if (!reachable) {
+                    unreachable++;
+                }
+
+                // the agent takes a step now and then, so km and the start move too
+                int next = planner.next();
+                if (next != -1 && rand.nextBoolean()) {
+                    x = next % maxX;
+                    y = next / maxX;
+                    planner.moveStart(x, y);
+                }
+                for (int k = 0; k < 3; k++) {
+                    int cx = rand.nextInt(maxX);
+                    int cy = rand.nextInt(maxY);
+                    if ((cx == x && cy == y) || (cx == goalX && cy == goalY)) {
+                        continue;
+                    }
+                    map.setWall(cx, cy, !map.isWall(cx, cy));
+                    planner.cellChanged(cx, cy);
+                }
+            }
+        }
+
+        System.out.println("  ok: " + plans + " repaired plans match, " + unreachable + " with the goal cut off");
+        System.out.println("\n✅ DStarLite test completed successfully!");
+    }
+
+    // starts at the agent, ends at the goal, one walkable 4-neighbour step at a time
+    private static void verifyPath(BitGrid map, int[] path, int expected, int goal, String what) {
+        check((path != null) == (expected != -1), what + ": path exists when the goal is reachable");
+        if (path == null) {
+            return;
+        }
+        int maxX = map.getWidth();
+        check(path.length == expected + 1, what + ": path has " + path.length + " cells");
+        check(path[path.length - 1] == goal, what + ": path ends at the goal");
+        for (int i = 0; i < path.length; i++) {
+            check(!map.isWall(path[i] % maxX, path[i] / maxX), what + ": path crosses a wall");
+            if (i > 0) {
+                int dx = Math.abs(path[i] % maxX - path[i - 1] % maxX);
+                int dy = Math.abs(path[i] / maxX - path[i - 1] / maxX);
+                check(dx + dy == 1, what + ": path jumps at step " + i);
+            }
+        }
+    }
+
+    // steps from source to destination, -1 when they are not connected
+    private static int bfs(BitGrid map, int srcX, int srcY, int dstX, int dstY) {
+        int maxX = map.getWidth();
+        int maxY = map.getHeight();
+        int[] distance = new int[maxX * maxY];
+        Arrays.fill(distance, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        distance[srcY * maxX + srcX] = 0;
+        queue.add(srcY * maxX + srcX);
+        while (!queue.isEmpty()) {
+            int cell = queue.poll();
+            int x = cell % maxX;
+            int y = cell / maxX;
+            if (x == dstX && y == dstY) {
+                return distance[cell];
+            }
+            for (int d = 0; d < 4; d++) {
+                int nx = x + (d == 0 ? -1 : d == 2 ? 1 : 0);
+                int ny = y + (d == 1 ? -1 : d == 3 ? 1 : 0);
+                if (!map.isWalkable(nx, ny)) {
+                    continue;
+                }
+                int next = ny * maxX + nx;
+                if (distance[next] == -1) {
+                    distance[next] = distance[cell] + 1;
+                    queue.add(next);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("FAILED: " + what);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.Arrays;
+
+// Flow field (Dijkstra map) towards one goal cell.
+// A single reverse flood from the goal stores, for every walkable cell, its
+// distance to the goal and the direction of the next step. Any number of
+// NPCs chasing the same goal then read their next tile in O(1) instead of
+// each running its own A*. Buffers are kept between builds, and ensure()
+// only rebuilds when the goal moved or the grid was marked as changed.
+// Not thread-safe: build and read it from the game's tick.
+public class FlowField {
+
+    // no route to the goal from this cell (wall, unreachable or the goal itself)
+    public static final byte NONE = -1;
+
+    // same order as AStar: left, up, right, down
+    private static final int[] DX = {-1, 0, 1, 0};
+    private static final int[] DY = {0, -1, 0, 1};
+
+    // collision map; mark the field dirty after editing it
+    private final BitGrid map;
+    private final int maxX;
+    private final int maxY;
+
+    private final int[] distance;
+    private final byte[] direction;
+    private final int[] queue;
+
+    private int goalX = -1;
+    private int goalY = -1;
+    private boolean dirty = true;
+
+    public FlowField(BitGrid map) {
+        this.map = map;
+        this.maxX = map.getWidth();
+        this.maxY = map.getHeight();
+        this.distance = new int[maxX * maxY];
+        this.direction = new byte[maxX * maxY];
+        this.queue = new int[maxX * maxY];
+    }
+
+    // rebuilds the field if the goal changed or the grid was marked dirty since the last build
+    public boolean ensure(int goalX, int goalY) {
+        if (!dirty && goalX == this.goalX && goalY == this.goalY) {
+            return false;
+        }
+        build(goalX, goalY);
+        return true;
+    }
+
+    // call when collision cells changed; the next ensure() rebuilds
+    public void markDirty() {
+        this.dirty = true;
+    }
+
+    // Every step costs 1 on the 0/1 grid, so the reverse Dijkstra pass is a
+    // breadth-first flood with a flat int[] queue.
+    public void build(int goalX, int goalY) {
+        this.goalX = goalX;
+        this.goalY = goalY;
+        this.dirty = false;
+        Arrays.fill(distance, -1);
+        Arrays.fill(direction, NONE);
+        if (goalX < 0 || goalX >= maxX || goalY < 0 || goalY >= maxY || map.isWall(goalX, goalY)) {
+            return;
+        }
+
+        int head = 0;
+        int tail = 0;
+        int goal = goalY * maxX + goalX;
+        distance[goal] = 0;
+        queue[tail++] = goal;
+        while (head < tail) {
+            int current = queue[head++];
+            int cx = current % maxX;
+            int cy = current / maxX;
+            for (int d = 0; d < 4; d++) {
+                int x = cx + DX[d];
+                int y = cy + DY[d];
+                if (x < 0 || x >= maxX || y < 0 || y >= maxY || map.isWall(x, y)) {
+                    continue;
+                }
+                int cell = y * maxX + x;
+                if (distance[cell] != -1) {
+                    continue;
+                }
+                distance[cell] = distance[current] + 1;
+                direction[cell] = (byte) ((d + 2) & 3); // step back towards current
+                queue[tail++] = cell;
+            }
+        }
+    }
+
+    // ------------------------------
+    // queries
+    // ------------------------------
+    // direction index (0 left, 1 up, 2 right, 3 down) of the next step from (x, y), or NONE
+    public byte getDirection(int x, int y) {
+        return direction[y * maxX + x];
+    }
+
+    // next cell (y * maxX + x) on the way to the goal, or -1
+    public int next(int x, int y) {
+        byte d = direction[y * maxX + x];
+        if (d == NONE) {
+            return -1;
+        }
+        return (y + DY[d]) * maxX + x + DX[d];
+    }
+
+    // steps to the goal from (x, y), or -1 if it cannot be reached
+    public int getDistance(int x, int y) {
+        return distance[y * maxX + x];
+    }
+
+    public boolean isReachable(int x, int y) {
+        return distance[y * maxX + x] >= 0;
+    }
+
+    public int getGoalX() {
+        return this.goalX;
+    }
+
+    public int getGoalY() {
+        return this.goalY;
+    }
+
+    public int getMaxX() {
+        return this.maxX;
+    }
+}
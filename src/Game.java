@@ -1,20 +1,417 @@
+import packets.OnNpcMoveBatch;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public class Game {
+    public static final long DEFAULT_TICK_MS = 300;
+    // most bots alive in one game at a time
+    public static final int MAX_BOTS = 1 << 16;
+    // side of one spatial index cell, in tiles
+    private static final float INDEX_CELL_SIZE = 8;
+    // bot routes kept per game, and the side of the regions they are invalidated by
+    private static final int PATH_CACHE_SIZE = 4096;
+    private static final int PATH_CACHE_REGION = 16;
+    // bot routes at least this long (in tiles, Manhattan) go through HPA* instead of one JPS over the map
+    private static final int LONG_ROUTE = 64;
+    private static final int ROUTE_CLUSTER_SIZE = 16;
+
+    // path searches of every game's bots run here instead of on the bot timers
+    private static final PathRequestService pathRequests = new PathRequestService(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 4096, 32);
+
+    // every game's tick loop runs on these few threads, not one thread per bot
+    private static final ScheduledExecutorService tickLoops = Executors.newScheduledThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+                Thread thread = new Thread(runnable, "game-tick");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final int gameId;
+    // the map every component searches: one bit per tile
+    private final BitGrid map;
+    // the array the game was built from, null for games built from a BitGrid; edit through setWall
+    public final int[][] collisions;
+    private final long tickMillis;
+    private final AStar pathfinder;
+    private final HierarchicalAStar hierarchy;
+    private final PathCache pathCache;
+    private final WalkableIndex walkableIndex;
+    private final NpcStore npcStore = new NpcStore(64);
+    private final NetIdAllocator netIds = new NetIdAllocator(MAX_BOTS);
+    private final SpatialHash npcIndex;
+    private InterestManager interest;
+    // moves of the current tick, broadcast at its end when interest filtering is off
+    private final OnNpcMoveBatch moveBatch = new OnNpcMoveBatch();
+    private SnapshotReplicator replicator;
+    // where broadcasts go; null for headless games
+    private NioServer server;
+    private final ScriptRuntime scripts = new ScriptRuntime(this, ScriptRuntime.virtualThreads());
     private final List<NPC> aiBots = new ArrayList<>();
+    private ScheduledFuture<?> tickTask;
+    private volatile long averageTickNanos = 0;
+    private long tickCount = 0;
+
+    // deterministic mode: seeded random draws, inline path searches, snapshot ring
+    private boolean deterministic = false;
+    private long seed;
+    private final Random random = new Random();
+    private GameSnapshot[] snapshots;
+
+    public Game(int gameId, int[][] collisions) {
+        this(gameId, collisions, DEFAULT_TICK_MS);
+    }
+
+    public Game(int gameId, int[][] collisions, long tickMillis) {
+        this(gameId, collisions, BitGrid.fromArray(collisions), tickMillis);
+    }
+
+    // large maps: load them with BitGrid.load, no int[][] is ever built
+    public Game(int gameId, BitGrid map) {
+        this(gameId, map, DEFAULT_TICK_MS);
+    }
+
+    public Game(int gameId, BitGrid map, long tickMillis) {
+        this(gameId, null, map, tickMillis);
+    }
 
-    public Game(int gameId) {
+    private Game(int gameId, int[][] collisions, BitGrid map, long tickMillis) {
+        this.gameId = gameId;
+        this.collisions = collisions;
+        this.map = map;
+        this.tickMillis = tickMillis;
+        this.pathfinder = new AStar(map, AStar.Engine.JPS);
+        this.hierarchy = new HierarchicalAStar(map, ROUTE_CLUSTER_SIZE);
+        this.pathCache = new PathCache(this::route, map.getWidth(), PATH_CACHE_SIZE, PATH_CACHE_REGION);
+        this.walkableIndex = new WalkableIndex(map);
+        this.npcIndex = new SpatialHash(map.getWidth(), map.getHeight(), INDEX_CELL_SIZE);
         this.generateAiBots();
     }
 
     private void generateAiBots() {
-        this.aiBots.add(new NPC(0, 0));
-        this.aiBots.add(new NPC(1, 1));
+        this.aiBots.add(new NPC(this, 0, 0));
+        this.aiBots.add(new NPC(this, 1, 1));
+    }
+
+    // ------------------------------
+    // tick loop
+    // ------------------------------
+    public synchronized void start() {
+        start(tickLoops, 2000);
+    }
+
+    // runs the tick loop on `executor`, first tick after initialDelayMillis. A
+    // single-threaded executor makes it the game's event loop (see GameHost).
+    public synchronized void start(ScheduledExecutorService executor, long initialDelayMillis) {
+        if (tickTask == null) {
+            tickTask = executor.scheduleAtFixedRate(this::step, initialDelayMillis, tickMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (tickTask != null) {
+            tickTask.cancel(false);
+            tickTask = null;
+        }
+    }
+
+    // One simulation tick. The tick loop calls it at the fixed rate; headless
+    // runs call it directly. Fixed-rate runs of one game never overlap, so bots
+    // are only touched by one thread at a time.
+    public void step() {
+        long started = System.nanoTime();
+        // at most one relabel per tick, however many walls were closed since the last one
+        walkableIndex.refresh();
+        for (int i = 0; i < npcStore.size(); i++) {
+            if (npcStore.hasFlag(i, NpcStore.FLAG_SCRIPTED)) {
+                continue;
+            }
+            try {
+                NPC.tick(this, npcStore, i);
+            } catch (RuntimeException e) {
+                // an exception would cancel the periodic task and freeze the whole game
+                e.printStackTrace();
+            }
+        }
+        scripts.tick();
+        flushMoves();
+        tickCount++;
+        if (deterministic) {
+            saveSnapshot();
+        }
+        long cost = System.nanoTime() - started;
+        averageTickNanos = averageTickNanos == 0 ? cost : averageTickNanos + (cost - averageTickNanos) / 8;
+    }
+
+    // one packet per tick (per viewer with interest filtering) instead of one per move
+    private void flushMoves() {
+        if (replicator != null) {
+            replicator.tick(npcStore);
+        } else if (interest != null) {
+            interest.flushMoves();
+        } else if (!moveBatch.isEmpty()) {
+            NPC.broadcast(this, moveBatch);
+            moveBatch.clear();
+        }
+    }
+
+    // runs `ticks` steps back to back, as fast as the CPU allows (headless load tests, replays)
+    public void fastForward(int ticks) {
+        for (int t = 0; t < ticks; t++) {
+            step();
+        }
+    }
+
+    public long getTickCount() {
+        return this.tickCount;
+    }
+
+    // ------------------------------
+    // deterministic simulation
+    // ------------------------------
+    // From now on every random draw comes from `seed`, the tick and a stream id,
+    // bot paths are searched inline instead of on the worker pool, and the
+    // state after each of the last `history` ticks is kept for rollback. Two
+    // games with the same map, seed and inputs then step bit-for-bit alike.
+    // Scripted bots (ScriptRuntime) are not covered.
+    public void enableDeterministic(long seed, int history) {
+        this.deterministic = true;
+        this.seed = seed;
+        this.snapshots = new GameSnapshot[history + 1];
+        for (int k = 0; k < snapshots.length; k++) {
+            snapshots[k] = new GameSnapshot();
+        }
+        saveSnapshot();
+    }
+
+    public boolean isDeterministic() {
+        return this.deterministic;
+    }
+
+    // Random source for one draw of `stream` (e.g. a bot's net id) in the current
+    // tick. Deterministic games derive it from seed, tick and stream alone, so
+    // there is no generator state to snapshot. Use it before the next call.
+    public Random random(int stream) {
+        if (!deterministic) {
+            return ThreadLocalRandom.current();
+        }
+        random.setSeed(mix(mix(seed + tickCount) + stream));
+        return random;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private void saveSnapshot() {
+        GameSnapshot snapshot = snapshots[(int) (tickCount % snapshots.length)];
+        snapshot.tick = tickCount;
+        snapshot.bots.copyFrom(npcStore);
+    }
+
+    // Puts the game back to how it was `ticks` ticks ago; step or fastForward
+    // re-simulate from there. The window must not span bot spawns or removals.
+    public void rollback(int ticks) {
+        long target = tickCount - ticks;
+        if (!deterministic || ticks < 0 || ticks >= snapshots.length || target < 0
+                || snapshots[(int) (target % snapshots.length)].tick != target) {
+            throw new IllegalStateException("tick " + target + " is not in the snapshot history");
+        }
+        npcStore.copyFrom(snapshots[(int) (target % snapshots.length)].bots);
+        tickCount = target;
+        for (int i = 0; i < npcStore.size(); i++) {
+            npcIndex.move(npcStore.handleAt(i), npcStore.getX(i), npcStore.getY(i));
+        }
+    }
+
+    // moving average of how long one tick takes
+    public long getAverageTickNanos() {
+        return this.averageTickNanos;
+    }
+
+    // share of one core this game keeps busy at its tick rate
+    public double getLoad() {
+        return averageTickNanos / (tickMillis * 1_000_000.0);
+    }
+
+    // Changes one collision tile and everything derived from the map. Bots
+    // already walking keep their current paths. Call from the game's loop
+    // (GameHost.execute from any other thread).
+    public void setWall(int x, int y, boolean wall) {
+        if (map.isWall(x, y) == wall) {
+            return;
+        }
+        map.setWall(x, y, wall);
+        if (collisions != null) {
+            collisions[y][x] = wall ? 1 : 0;
+        }
+        if (wall) {
+            walkableIndex.cellClosed(x, y);
+        } else {
+            walkableIndex.cellOpened(x, y);
+        }
+        pathfinder.cellChanged(x, y);
+        hierarchy.cellChanged(x, y);
+        // last, so searches the cache lets through from here on see the updated index and hierarchy
+        if (wall) {
+            pathCache.invalidate(x, y);
+        } else {
+            pathCache.cellOpened(x, y);
+        }
+    }
+
+    // the search behind the route cache: long routes go through the cluster graph
+    // (near-optimal, each hop searched inside its own clusters), short ones are a
+    // plain JPS that would not gain anything from it
+    private List<AStar.Node> route(int srcX, int srcY, int dstX, int dstY) {
+        // a goal outside the source's component would flood all of it before failing
+        if (!walkableIndex.isReachable(srcX, srcY, dstX, dstY)) {
+            return null;
+        }
+        if (isLongRoute(srcX, srcY, dstX, dstY)) {
+            return hierarchy.findPath(srcX, srcY, dstX, dstY);
+        }
+        return pathfinder.findPath(srcX, srcY, dstX, dstY);
+    }
+
+    static boolean isLongRoute(int srcX, int srcY, int dstX, int dstY) {
+        return Math.abs(srcX - dstX) + Math.abs(srcY - dstY) >= LONG_ROUTE;
+    }
+
+    // HPA* waypoints from source to destination for a bot to refine a few hops
+    // at a time (HierarchicalAStar.refine), or null when there is no route.
+    // Safe to call from the path workers.
+    public int[] findWaypoints(int srcX, int srcY, int dstX, int dstY) {
+        if (!walkableIndex.isReachable(srcX, srcY, dstX, dstY)) {
+            return null;
+        }
+        return hierarchy.findAbstractPath(srcX, srcY, dstX, dstY);
+    }
+
+    // despawns a bot and frees its net id; call from the game's loop (see GameHost.execute)
+    public void removeBot(NPC npc) {
+        int handle = npc.getHandle();
+        int i = npcStore.indexOf(handle);
+        if (i == -1) {
+            return;
+        }
+        int netId = npcStore.getNetId(i);
+        if (npcStore.hasFlag(i, NpcStore.FLAG_SCRIPTED)) {
+            scripts.stop(npc);
+        }
+        if (interest != null && replicator == null) {
+            interest.npcRemoved(netId, npcStore.getX(i), npcStore.getY(i));
+        }
+        npcIndex.remove(handle);
+        npcStore.remove(handle);
+        netIds.release(netId);
+        aiBots.remove(npc);
     }
 
     public List<NPC> getAiBots() {
         return this.aiBots;
     }
-}
 
+    public NetIdAllocator getNetIds() {
+        return this.netIds;
+    }
+
+    public NpcStore getNpcStore() {
+        return this.npcStore;
+    }
+
+    // bot positions by NpcStore handle, kept current by the tick
+    public SpatialHash getNpcIndex() {
+        return this.npcIndex;
+    }
+
+    // connections assigned to this game with NioServer.setGame get its broadcasts
+    public void setServer(NioServer server) {
+        this.server = server;
+    }
+
+    public NioServer getServer() {
+        return this.server;
+    }
+
+    // from now on NPC updates only go to connections whose player is near the NPC
+    public void enableInterest(InterestManager.Sender sender, float cellSize, int viewRadius) {
+        this.interest = new InterestManager(this, cellSize, viewRadius, sender);
+    }
+
+    // null while every NPC update is broadcast to the whole game
+    public InterestManager getInterest() {
+        return this.interest;
+    }
+
+    // from now on clients get delta snapshots against the last one they acknowledged
+    // instead of move packets; this replaces interest filtering for NPC updates
+    public void enableSnapshots(InterestManager.Sender sender, int history) {
+        this.replicator = new SnapshotReplicator(history, sender);
+    }
+
+    // null unless enableSnapshots was called
+    public SnapshotReplicator getReplicator() {
+        return this.replicator;
+    }
+
+    OnNpcMoveBatch getMoveBatch() {
+        return this.moveBatch;
+    }
+
+    // scripted behaviours of this game's bots
+    public ScriptRuntime getScripts() {
+        return this.scripts;
+    }
+
+    public int getGameId() {
+        return this.gameId;
+    }
+
+    public long getTickMillis() {
+        return this.tickMillis;
+    }
+
+    public BitGrid getMap() {
+        return this.map;
+    }
+
+    public int getWidth() {
+        return map.getWidth();
+    }
+
+    public int getHeight() {
+        return map.getHeight();
+    }
+
+    public AStar getPathfinder() {
+        return this.pathfinder;
+    }
+
+    // what bots search through: JPS for short routes and HPA* for long ones, behind the route cache
+    public PathCache getPathCache() {
+        return this.pathCache;
+    }
+
+    public HierarchicalAStar getHierarchy() {
+        return this.hierarchy;
+    }
+
+    public WalkableIndex getWalkableIndex() {
+        return this.walkableIndex;
+    }
+
+    public static PathRequestService getPathRequests() {
+        return pathRequests;
+    }
+}
@@ -0,0 +1,178 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+// Runs many games in one process on a fixed set of single-threaded event loops.
+// Every game is pinned to one loop, so all of its ticks run on the same thread
+// and nothing inside a game needs locking. New games go to the least loaded
+// loop, and a periodic rebalance moves a game from the busiest to the idlest
+// loop when their measured tick load drifts apart.
+public class GameHost implements AutoCloseable {
+
+    // loops closer than this (share of a core) are considered balanced
+    private static final double BALANCE_MARGIN = 0.10;
+
+    private final EventLoop[] loops;
+    private final Map<Game, EventLoop> loopOfGame = new HashMap<>();
+    // games between loops -> tasks posted for them during the hand-over
+    private final Map<Game, List<Runnable>> migrating = new HashMap<>();
+    private final ScheduledExecutorService balancer;
+
+    private static final class EventLoop {
+        final ScheduledExecutorService executor;
+        final List<Game> games = new ArrayList<>();
+
+        EventLoop(int index) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "game-loop-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        double load() {
+            double load = 0;
+            for (Game game : games) {
+                load += game.getLoad();
+            }
+            return load;
+        }
+    }
+
+    public GameHost(int loopCount, long rebalanceMillis) {
+        this.loops = new EventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new EventLoop(i);
+        }
+        this.balancer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "game-balancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        balancer.scheduleWithFixedDelay(this::rebalance, rebalanceMillis, rebalanceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public GameHost() {
+        this(Runtime.getRuntime().availableProcessors(), 5000);
+    }
+
+    // ------------------------------
+    // games
+    // ------------------------------
+    public synchronized void addGame(Game game) {
+        if (loopOfGame.containsKey(game)) {
+            return;
+        }
+        EventLoop loop = loops[0];
+        for (EventLoop candidate : loops) {
+            if (candidate.load() < loop.load()
+                    || (candidate.load() == loop.load() && candidate.games.size() < loop.games.size())) {
+                loop = candidate;
+            }
+        }
+        loop.games.add(game);
+        loopOfGame.put(game, loop);
+        game.start(loop.executor, 0);
+    }
+
+    public synchronized void removeGame(Game game) {
+        // on the game's loop, so it cannot race a tick that is running right now
+        if (execute(game, game::stop)) {
+            loopOfGame.remove(game).games.remove(game);
+        }
+    }
+
+    // Runs `task` on the loop that owns the game, between two of its ticks. For
+    // code on other threads (the transport, an admin console) that has to touch
+    // a game: setWall, spawning or removing bots, starting scripts. A task posted
+    // while the game moves between loops waits for the hand-over and then runs on
+    // the new loop, never next to a tick on the old one. Returns false when the
+    // game is not hosted here.
+    public synchronized boolean execute(Game game, Runnable task) {
+        EventLoop loop = loopOfGame.get(game);
+        if (loop == null) {
+            return false;
+        }
+        List<Runnable> deferred = migrating.get(game);
+        if (deferred != null) {
+            deferred.add(task);
+        } else {
+            loop.executor.execute(task);
+        }
+        return true;
+    }
+
+    public synchronized int getGameCount() {
+        return loopOfGame.size();
+    }
+
+    // index of the loop a game is pinned to, or -1
+    public synchronized int getLoopOf(Game game) {
+        EventLoop loop = loopOfGame.get(game);
+        return loop == null ? -1 : Arrays.asList(loops).indexOf(loop);
+    }
+
+    // ------------------------------
+    // balancing
+    // ------------------------------
+    // Moves at most one game per run: the one on the busiest loop whose load
+    // best halves the gap to the idlest loop.
+    synchronized void rebalance() {
+        EventLoop busiest = loops[0];
+        EventLoop idlest = loops[0];
+        for (EventLoop loop : loops) {
+            if (loop.load() > busiest.load()) {
+                busiest = loop;
+            }
+            if (loop.load() < idlest.load()) {
+                idlest = loop;
+            }
+        }
+        double gap = busiest.load() - idlest.load();
+        if (gap < BALANCE_MARGIN || busiest.games.size() < 2) {
+            return;
+        }
+        Game best = null;
+        for (Game game : busiest.games) {
+            double load = game.getLoad();
+            if (!migrating.containsKey(game) && load < gap && (best == null || Math.abs(gap / 2 - load) < Math.abs(gap / 2 - best.getLoad()))) {
+                best = game;
+            }
+        }
+        if (best != null) {
+            migrate(best, busiest, idlest);
+        }
+    }
+
+    // The hand-over runs on the old loop: no tick of the game can be in
+    // progress there, and the new loop only starts it once it was stopped.
+    // Tasks posted in between follow the game to the new loop; if it was
+    // removed meanwhile they run right here, with the game stopped.
+    private void migrate(Game game, EventLoop from, EventLoop to) {
+        from.games.remove(game);
+        to.games.add(game);
+        loopOfGame.put(game, to);
+        migrating.put(game, new ArrayList<>());
+        from.executor.execute(() -> {
+            game.stop();
+            List<Runnable> deferred;
+            synchronized (GameHost.this) {
+                deferred = migrating.remove(game);
+                if (loopOfGame.get(game) == to) {
+                    game.start(to.executor, game.getTickMillis());
+                    deferred.forEach(to.executor::execute);
+                    return;
+                }
+            }
+            deferred.forEach(Runnable::run);
+        });
+    }
+
+    @Override
+    public synchronized void close() {
+        balancer.shutdownNow();
+        for (EventLoop loop : loops) {
+            loop.executor.shutdownNow();
+        }
+        loopOfGame.clear();
+    }
+}
@@ -0,0 +1,6 @@
+// Copy of a game's simulation state at the end of one tick, see Game.enableDeterministic.
+// Instances live in the game's snapshot ring and are overwritten in place.
+final class GameSnapshot {
+    long tick = -1;
+    final NpcStore bots = new NpcStore(64);
+}
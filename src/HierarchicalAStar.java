@@ -0,0 +1,447 @@
+import java.util.*;
+
+// Hierarchical path planning (HPA*) over a collision map.
+// The map is cut into clusterSize x clusterSize clusters. Every walkable run
+// along a cluster border gets one or two entrances, each entrance is a pair of
+// abstract nodes (one per side) and the nodes of a cluster are linked with
+// their in-cluster walking distance. Long queries search this small graph and
+// return waypoints; refine() turns only the next few waypoint hops into tiles,
+// each with a search that never leaves the hop's one or two clusters.
+// Everything is stored per cluster, so a changed tile only rebuilds its own
+// cluster and, on a border, the neighbour across it (cellChanged).
+public class HierarchicalAStar implements PathFinder {
+
+    // border runs at least this long get an entrance at both ends instead of the middle
+    private static final int LONG_ENTRANCE = 6;
+
+    // same order as AStar: left, up, right, down
+    private static final int[] DX = {-1, 0, 1, 0};
+    private static final int[] DY = {0, -1, 0, 1};
+
+    // collision map; report edits through cellChanged
+    private final BitGrid map;
+    private final int maxX;
+    private final int maxY;
+    private final int clusterSize;
+    private final int clustersX;
+    private final int clustersY;
+    // abstract node ids are cluster * nodeStride + index; a cluster has at most this many border tiles
+    private final int nodeStride;
+    // owner of the AStar.Node objects refine returns (Node is an inner class), it does no searching here
+    private final AStar nodes;
+
+    // by cluster (cy * clustersX + cx); edits publish a new array, so a query on
+    // another thread reads one consistent set of clusters
+    private volatile Cluster[] clusters;
+
+    private static final class Cluster {
+        // node tiles (y * maxX + x), ascending
+        final int[] cells;
+        // per node: bit d is set when an entrance leads to the neighbour in direction d
+        final byte[] cross;
+        // dist[i * n + j]: walking distance from node i to node j inside the cluster, -1 for none
+        final int[] dist;
+
+        Cluster(int[] cells, byte[] cross, int[] dist) {
+            this.cells = cells;
+            this.cross = cross;
+            this.dist = dist;
+        }
+    }
+
+    public HierarchicalAStar(BitGrid map, int clusterSize) {
+        this.map = map;
+        this.maxX = map.getWidth();
+        this.maxY = map.getHeight();
+        this.clusterSize = clusterSize;
+        this.clustersX = (maxX + clusterSize - 1) / clusterSize;
+        this.clustersY = (maxY + clusterSize - 1) / clusterSize;
+        this.nodeStride = 4 * clusterSize;
+        this.nodes = new AStar(map, AStar.Engine.PRIMITIVE);
+        this.rebuild();
+    }
+
+    // ------------------------------
+    // precomputation
+    // ------------------------------
+    // recomputes every cluster, after edits too large to report tile by tile
+    public void rebuild() {
+        Cluster[] all = new Cluster[clustersX * clustersY];
+        for (int c = 0; c < all.length; c++) {
+            all[c] = buildCluster(c);
+        }
+        clusters = all;
+    }
+
+    // tile (x, y) of the map flipped: rebuilds its cluster, and the neighbours
+    // whose shared border runs through the tile
+    public void cellChanged(int x, int y) {
+        Cluster[] next = clusters.clone();
+        int cx = x / clusterSize;
+        int cy = y / clusterSize;
+        next[cy * clustersX + cx] = buildCluster(cy * clustersX + cx);
+        for (int d = 0; d < 4; d++) {
+            int nx = cx + DX[d];
+            int ny = cy + DY[d];
+            if (nx < 0 || nx >= clustersX || ny < 0 || ny >= clustersY) {
+                continue;
+            }
+            boolean onBorder = d == 0 ? x % clusterSize == 0
+                    : d == 1 ? y % clusterSize == 0
+                    : d == 2 ? x % clusterSize == clusterSize - 1
+                    : y % clusterSize == clusterSize - 1;
+            if (onBorder) {
+                next[ny * clustersX + nx] = buildCluster(ny * clustersX + nx);
+            }
+        }
+        clusters = next;
+    }
+
+    // Entrances on the four borders of cluster c, seen from its side, and the
+    // in-cluster distances between them. Both clusters of a border scan the same
+    // tile pairs in the same order, so they agree on its entrances.
+    private Cluster buildCluster(int c) {
+        int x0 = (c % clustersX) * clusterSize;
+        int y0 = (c / clustersX) * clusterSize;
+        int x1 = Math.min(x0 + clusterSize, maxX);
+        int y1 = Math.min(y0 + clusterSize, maxY);
+
+        // entrance tiles as cell << 4 | direction bit, merged per tile after sorting
+        long[] found = new long[nodeStride];
+        int count = 0;
+        if (x0 > 0) {
+            count = addEntrances(x0, y0, 0, 1, y1 - y0, 0, found, count);
+        }
+        if (y0 > 0) {
+            count = addEntrances(x0, y0, 1, 0, x1 - x0, 1, found, count);
+        }
+        if (x1 < maxX) {
+            count = addEntrances(x1 - 1, y0, 0, 1, y1 - y0, 2, found, count);
+        }
+        if (y1 < maxY) {
+            count = addEntrances(x0, y1 - 1, 1, 0, x1 - x0, 3, found, count);
+        }
+        Arrays.sort(found, 0, count);
+        int[] cells = new int[count];
+        byte[] cross = new byte[count];
+        int n = 0;
+        for (int k = 0; k < count; k++) {
+            int cell = (int) (found[k] >>> 4);
+            if (n > 0 && cells[n - 1] == cell) {
+                cross[n - 1] |= (byte) found[k];
+            } else {
+                cells[n] = cell;
+                cross[n] = (byte) (found[k] & 15);
+                n++;
+            }
+        }
+        cells = Arrays.copyOf(cells, n);
+        cross = Arrays.copyOf(cross, n);
+
+        int[] dist = new int[n * n];
+        int[] row = new int[n];
+        for (int i = 0; i < n; i++) {
+            clusterDistances(cells[i], c, cells, n, row);
+            System.arraycopy(row, 0, dist, i * n, n);
+        }
+        return new Cluster(cells, cross, dist);
+    }
+
+    // Scans `length` tiles from (x, y) stepping by (sx, sy) along one border of a
+    // cluster, pairing each with its neighbour in direction d, and records the
+    // entrances of every run walkable on both sides. Returns the new count.
+    private int addEntrances(int x, int y, int sx, int sy, int length, int d, long[] found, int count) {
+        int runStart = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean open = i < length
+                    && !map.isWall(x + sx * i, y + sy * i)
+                    && !map.isWall(x + sx * i + DX[d], y + sy * i + DY[d]);
+            if (open && runStart == -1) {
+                runStart = i;
+            } else if (!open && runStart != -1) {
+                int runEnd = i - 1;
+                if (runEnd - runStart + 1 >= LONG_ENTRANCE) {
+                    found[count++] = entrance(x + sx * runStart, y + sy * runStart, d);
+                    found[count++] = entrance(x + sx * runEnd, y + sy * runEnd, d);
+                } else {
+                    int mid = (runStart + runEnd) / 2;
+                    found[count++] = entrance(x + sx * mid, y + sy * mid, d);
+                }
+                runStart = -1;
+            }
+        }
+        return count;
+    }
+
+    private long entrance(int x, int y, int d) {
+        return ((long) (y * maxX + x) << 4) | (1 << d);
+    }
+
+    private int clusterOf(int x, int y) {
+        return (y / clusterSize) * clustersX + x / clusterSize;
+    }
+
+    // breadth-first flood from cell `from` that never leaves `cluster`.
+    // out[i] is the distance to targets[i] (i < count), or -1 if it cannot be reached inside the cluster.
+    private void clusterDistances(int from, int cluster, int[] targets, int count, int[] out) {
+        int x0 = (cluster % clustersX) * clusterSize;
+        int y0 = (cluster / clustersX) * clusterSize;
+        int w = Math.min(x0 + clusterSize, maxX) - x0;
+        int h = Math.min(y0 + clusterSize, maxY) - y0;
+
+        // local cell = (y - y0) * w + (x - x0)
+        int[] distance = new int[w * h];
+        Arrays.fill(distance, -1);
+        int[] queue = new int[w * h];
+        int head = 0;
+        int tail = 0;
+        int start = (from / maxX - y0) * w + from % maxX - x0;
+        distance[start] = 0;
+        queue[tail++] = start;
+        while (head < tail) {
+            int current = queue[head++];
+            int cx = current % w;
+            int cy = current / w;
+            for (int d = 0; d < 4; d++) {
+                int x = cx + DX[d];
+                int y = cy + DY[d];
+                if (x < 0 || x >= w || y < 0 || y >= h || map.isWall(x0 + x, y0 + y)) {
+                    continue;
+                }
+                int cell = y * w + x;
+                if (distance[cell] == -1) {
+                    distance[cell] = distance[current] + 1;
+                    queue[tail++] = cell;
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            out[i] = distance[(targets[i] / maxX - y0) * w + targets[i] % maxX - x0];
+        }
+    }
+
+    // ------------------------------
+    // queries
+    // ------------------------------
+    // Waypoint cells (y * width + x) from source to destination in walking order,
+    // or null when there is no route. Consecutive waypoints are either inside the
+    // same cluster or one step apart across a border. Routes are near-optimal:
+    // they only cross borders at entrances.
+    public int[] findAbstractPath(int srcX, int srcY, int dstX, int dstY) {
+        if (!inBounds(srcX, srcY) || !inBounds(dstX, dstY) || map.isWall(srcX, srcY) || map.isWall(dstX, dstY)) {
+            return null;
+        }
+        Cluster[] clusters = this.clusters;
+        int src = srcY * maxX + srcX;
+        int dst = dstY * maxX + dstX;
+        if (src == dst) {
+            return new int[]{src};
+        }
+        int srcCluster = clusterOf(srcX, srcY);
+        int dstCluster = clusterOf(dstX, dstY);
+
+        if (srcCluster == dstCluster) {
+            int[] direct = new int[1];
+            clusterDistances(src, srcCluster, new int[]{dst}, 1, direct);
+            if (direct[0] >= 0) {
+                return new int[]{src, dst};
+            }
+        }
+
+        // link the query endpoints to the abstract nodes of their clusters
+        Cluster srcNodes = clusters[srcCluster];
+        int[] srcLinks = new int[srcNodes.cells.length];
+        clusterDistances(src, srcCluster, srcNodes.cells, srcLinks.length, srcLinks);
+        Cluster dstNodes = clusters[dstCluster];
+        int[] dstLinks = new int[dstNodes.cells.length];
+        clusterDistances(dst, dstCluster, dstNodes.cells, dstLinks.length, dstLinks);
+
+        // A* over the abstract graph, node ids below n plus n = source and n + 1 = destination
+        int n = clusters.length * nodeStride;
+        int srcNode = n;
+        int dstNode = n + 1;
+        SearchScratch s = SearchScratch.acquire(n + 2);
+        s.relax(srcNode, 0, -1);
+        s.push(srcNode, heuristic(src, dst));
+        while (!s.heapEmpty()) {
+            int current = s.poll();
+            if (s.isClosed(current)) {
+                continue;
+            }
+            if (current == dstNode) {
+                return waypoints(s, clusters, dstNode, src, dst);
+            }
+            s.close(current);
+            if (current == srcNode) {
+                for (int i = 0; i < srcLinks.length; i++) {
+                    if (srcLinks[i] >= 0) {
+                        relax(s, clusters, current, srcCluster * nodeStride + i, srcLinks[i], dst);
+                    }
+                }
+                continue;
+            }
+            int c = current / nodeStride;
+            int i = current % nodeStride;
+            Cluster cluster = clusters[c];
+            int count = cluster.cells.length;
+            for (int j = 0; j < count; j++) {
+                int cost = cluster.dist[i * count + j];
+                if (j != i && cost >= 0) {
+                    relax(s, clusters, current, c * nodeStride + j, cost, dst);
+                }
+            }
+            for (int d = 0; d < 4; d++) {
+                if ((cluster.cross[i] & (1 << d)) == 0) {
+                    continue;
+                }
+                int cell = cluster.cells[i] + DY[d] * maxX + DX[d];
+                int other = c + DY[d] * clustersX + DX[d];
+                int j = Arrays.binarySearch(clusters[other].cells, cell);
+                if (j >= 0) {
+                    relax(s, clusters, current, other * nodeStride + j, 1, dst);
+                }
+            }
+            if (c == dstCluster && dstLinks[i] >= 0) {
+                int g = s.gScore[current] + dstLinks[i];
+                if (!s.isOpen(dstNode) || g < s.gScore[dstNode]) {
+                    s.relax(dstNode, g, current);
+                    s.push(dstNode, g);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void relax(SearchScratch s, Cluster[] clusters, int from, int to, int cost, int dst) {
+        if (s.isClosed(to)) {
+            return;
+        }
+        int g = s.gScore[from] + cost;
+        if (!s.isOpen(to) || g < s.gScore[to]) {
+            s.relax(to, g, from);
+            s.push(to, g + heuristic(nodeCell(clusters, to), dst));
+        }
+    }
+
+    private int nodeCell(Cluster[] clusters, int node) {
+        return clusters[node / nodeStride].cells[node % nodeStride];
+    }
+
+    private int[] waypoints(SearchScratch s, Cluster[] clusters, int dstNode, int src, int dst) {
+        int count = 0;
+        for (int node = dstNode; node != -1; node = s.parent[node]) {
+            count++;
+        }
+        int[] cells = new int[count];
+        int i = count;
+        for (int node = dstNode; node != -1; node = s.parent[node]) {
+            cells[--i] = node == dstNode ? dst : node == dstNode - 1 ? src : nodeCell(clusters, node);
+        }
+        return cells;
+    }
+
+    // Tiles for the next `segments` waypoint hops starting at waypoints[from], in
+    // walking order (the first node is waypoints[from] itself). Each hop is solved
+    // by a search confined to the one or two clusters it lies in.
+    public List<AStar.Node> refine(int[] waypoints, int from, int segments) {
+        List<AStar.Node> path = new ArrayList<>();
+        int last = Math.min(from + segments, waypoints.length - 1);
+        if (from >= last) {
+            int a = waypoints[Math.min(from, waypoints.length - 1)];
+            path.add(nodes.new Node(a % maxX, a / maxX));
+            return path;
+        }
+        for (int i = from; i < last; i++) {
+            if (!hopPath(waypoints[i], waypoints[i + 1], path)) {
+                return null;
+            }
+        }
+        for (int k = 0; k < path.size() - 1; k++) {
+            path.get(k).parent = path.get(k + 1);
+        }
+        return path;
+    }
+
+    // Same contract as AStar.findPath: the whole route, destination first, refined
+    // up front. For callers that need every tile at once (scripts); bots keep the
+    // waypoints and refine a few hops at a time. Routes are near-optimal, see findAbstractPath.
+    @Override
+    public List<AStar.Node> findPath(int srcX, int srcY, int dstX, int dstY) {
+        // abstract path from the destination, so the refined tiles start there
+        int[] waypoints = findAbstractPath(dstX, dstY, srcX, srcY);
+        return waypoints == null ? null : refine(waypoints, 0, waypoints.length - 1);
+    }
+
+    // A* from cell a to cell b that never leaves the clusters of a and b (the same
+    // cluster or two neighbours, so their bounding box is exactly their union).
+    // Appends the tiles after a, or a itself too when path is empty; false if b
+    // cannot be reached inside the window.
+    private boolean hopPath(int a, int b, List<AStar.Node> path) {
+        int ax = a % maxX;
+        int ay = a / maxX;
+        int bx = b % maxX;
+        int by = b / maxX;
+        int x0 = Math.min(ax, bx) / clusterSize * clusterSize;
+        int y0 = Math.min(ay, by) / clusterSize * clusterSize;
+        int x1 = Math.min((Math.max(ax, bx) / clusterSize + 1) * clusterSize, maxX);
+        int y1 = Math.min((Math.max(ay, by) / clusterSize + 1) * clusterSize, maxY);
+
+        SearchScratch s = SearchScratch.acquire(maxX * maxY);
+        s.relax(a, 0, -1);
+        s.push(a, heuristic(a, b));
+        while (!s.heapEmpty()) {
+            int current = s.poll();
+            if (s.isClosed(current)) {
+                continue;
+            }
+            if (current == b) {
+                int start = path.size();
+                for (int cell = b; cell != a; cell = s.parent[cell]) {
+                    path.add(nodes.new Node(cell % maxX, cell / maxX));
+                }
+                if (start == 0) {
+                    path.add(nodes.new Node(ax, ay));
+                }
+                Collections.reverse(path.subList(start, path.size()));
+                return true;
+            }
+            s.close(current);
+            int cx = current % maxX;
+            int cy = current / maxX;
+            int g = s.gScore[current] + 1;
+            for (int d = 0; d < 4; d++) {
+                int x = cx + (d == 0 ? -1 : d == 2 ? 1 : 0);
+                int y = cy + (d == 1 ? -1 : d == 3 ? 1 : 0);
+                if (x < x0 || x >= x1 || y < y0 || y >= y1 || map.isWall(x, y)) {
+                    continue;
+                }
+                int cell = y * maxX + x;
+                if (!s.isClosed(cell) && (!s.isOpen(cell) || g < s.gScore[cell])) {
+                    s.relax(cell, g, current);
+                    s.push(cell, g + heuristic(cell, b));
+                }
+            }
+        }
+        return false;
+    }
+
+    public int getClusterSize() {
+        return this.clusterSize;
+    }
+
+    public int getAbstractNodeCount() {
+        int count = 0;
+        for (Cluster cluster : clusters) {
+            count += cluster.cells.length;
+        }
+        return count;
+    }
+
+    private int heuristic(int a, int b) {
+        return Math.abs(a % maxX - b % maxX) + Math.abs(a / maxX - b / maxX);
+    }
+
+    private boolean inBounds(int x, int y) {
+        return x >= 0 && x < maxX && y >= 0 && y < maxY;
+    }
+}
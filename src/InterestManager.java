@@ -0,0 +1,266 @@
+import packets.OnDespawnNpc;
+import packets.OnNpcMoveBatch;
+import packets.OnSpawnNpc;
+import packets.PacketPool;
+
+import java.util.*;
+
+// Area-of-interest filtering for one game's NPC broadcasts.
+// The map is split into square interest cells and every connection
+// subscribes to the (2 * viewRadius + 1)^2 cells around its player. Moves go
+// only to subscribers of the NPC's cell, queued per viewer and sent as one
+// OnNpcMoveBatch per tick by flushMoves(). When an NPC crosses into a cell a
+// viewer did not see before it gets an OnSpawnNpc, and an OnDespawnNpc when
+// it leaves the viewer's window; the despawn also drops the NPC's moves
+// still queued for that viewer. Moving the player spawns and despawns the
+// NPCs of the cells that enter and leave its window.
+// Not thread-safe: call it from the game's loop.
+public class InterestManager {
+
+    // how packets reach one connection, e.g. the server's per-connection send.
+    // Packets are reused after send returns, so it must serialize right away.
+    public interface Sender {
+        void send(int connectionId, Object packet);
+    }
+
+    private static final class Viewer {
+        final int connectionId;
+        int cellX;
+        int cellY;
+        final OnNpcMoveBatch moves = PacketPool.MOVE_BATCH.acquire();
+
+        Viewer(int connectionId) {
+            this.connectionId = connectionId;
+        }
+    }
+
+    private final Game game;
+    private final Sender sender;
+    private final float cellSize;
+    private final int viewRadius;
+    private final int cellsX;
+    private final int cellsY;
+
+    private final List<List<Viewer>> subscribers;
+    private final Map<Integer, Viewer> viewers = new HashMap<>();
+    private int[] found = new int[256];
+
+    public InterestManager(Game game, float cellSize, int viewRadius, Sender sender) {
+        this.game = game;
+        this.sender = sender;
+        this.cellSize = cellSize;
+        this.viewRadius = viewRadius;
+        this.cellsX = Math.max(1, (int) Math.ceil(game.getWidth() / cellSize));
+        this.cellsY = Math.max(1, (int) Math.ceil(game.getHeight() / cellSize));
+        this.subscribers = new ArrayList<>(cellsX * cellsY);
+        for (int i = 0; i < cellsX * cellsY; i++) {
+            subscribers.add(new ArrayList<>());
+        }
+    }
+
+    // ------------------------------
+    // viewers
+    // ------------------------------
+    public void addViewer(int connectionId, float x, float y) {
+        Viewer viewer = new Viewer(connectionId);
+        viewers.put(connectionId, viewer);
+        viewer.cellX = cellX(x);
+        viewer.cellY = cellY(y);
+        forWindow(viewer.cellX, viewer.cellY, (cx, cy) -> {
+            subscribers.get(cy * cellsX + cx).add(viewer);
+            spawnCell(viewer, cx, cy);
+        });
+    }
+
+    public void moveViewer(int connectionId, float x, float y) {
+        Viewer viewer = viewers.get(connectionId);
+        if (viewer == null) {
+            return;
+        }
+        int oldX = viewer.cellX;
+        int oldY = viewer.cellY;
+        int newX = cellX(x);
+        int newY = cellY(y);
+        if (oldX == newX && oldY == newY) {
+            return;
+        }
+        forWindow(oldX, oldY, (cx, cy) -> {
+            if (!inWindow(newX, newY, cx, cy)) {
+                subscribers.get(cy * cellsX + cx).remove(viewer);
+                despawnCell(viewer, cx, cy);
+            }
+        });
+        forWindow(newX, newY, (cx, cy) -> {
+            if (!inWindow(oldX, oldY, cx, cy)) {
+                subscribers.get(cy * cellsX + cx).add(viewer);
+                spawnCell(viewer, cx, cy);
+            }
+        });
+        viewer.cellX = newX;
+        viewer.cellY = newY;
+    }
+
+    // the connection is gone, nothing is sent to it any more
+    public void removeViewer(int connectionId) {
+        Viewer viewer = viewers.remove(connectionId);
+        if (viewer != null) {
+            forWindow(viewer.cellX, viewer.cellY, (cx, cy) -> subscribers.get(cy * cellsX + cx).remove(viewer));
+            PacketPool.MOVE_BATCH.release(viewer.moves);
+        }
+    }
+
+    // ------------------------------
+    // NPC events
+    // ------------------------------
+    public void npcSpawned(int netId, float x, float y) {
+        OnSpawnNpc spawn = spawnPacket(netId, x, y);
+        for (Viewer viewer : subscribers.get(cellY(y) * cellsX + cellX(x))) {
+            sender.send(viewer.connectionId, spawn);
+        }
+        PacketPool.SPAWN.release(spawn);
+    }
+
+    // the move is queued for everyone who saw the NPC before and still sees it
+    public void npcMoved(int netId, float oldX, float oldY, float x, float y) {
+        int fromX = cellX(oldX);
+        int fromY = cellY(oldY);
+        int toX = cellX(x);
+        int toY = cellY(y);
+        List<Viewer> to = subscribers.get(toY * cellsX + toX);
+        if (fromX == toX && fromY == toY) {
+            for (Viewer viewer : to) {
+                viewer.moves.add(netId, (int) x, (int) y);
+            }
+            return;
+        }
+        OnSpawnNpc spawn = null;
+        for (Viewer viewer : to) {
+            if (inWindow(viewer.cellX, viewer.cellY, fromX, fromY)) {
+                viewer.moves.add(netId, (int) x, (int) y);
+            } else {
+                if (spawn == null) {
+                    spawn = spawnPacket(netId, x, y);
+                }
+                sender.send(viewer.connectionId, spawn);
+            }
+        }
+        OnDespawnNpc despawn = null;
+        for (Viewer viewer : subscribers.get(fromY * cellsX + fromX)) {
+            if (!inWindow(viewer.cellX, viewer.cellY, toX, toY)) {
+                if (despawn == null) {
+                    despawn = despawnPacket(netId);
+                }
+                sendDespawn(viewer, despawn);
+            }
+        }
+        if (spawn != null) {
+            PacketPool.SPAWN.release(spawn);
+        }
+        if (despawn != null) {
+            PacketPool.DESPAWN.release(despawn);
+        }
+    }
+
+    // sends every viewer the moves queued for it since the last flush
+    public void flushMoves() {
+        for (Viewer viewer : viewers.values()) {
+            if (!viewer.moves.isEmpty()) {
+                sender.send(viewer.connectionId, viewer.moves);
+                viewer.moves.clear();
+            }
+        }
+    }
+
+    public void npcRemoved(int netId, float x, float y) {
+        OnDespawnNpc despawn = despawnPacket(netId);
+        for (Viewer viewer : subscribers.get(cellY(y) * cellsX + cellX(x))) {
+            sendDespawn(viewer, despawn);
+        }
+        PacketPool.DESPAWN.release(despawn);
+    }
+
+    // ------------------------------
+    // helpers
+    // ------------------------------
+    private void spawnCell(Viewer viewer, int cx, int cy) {
+        NpcStore store = game.getNpcStore();
+        int count = queryCell(cx, cy);
+        for (int k = 0; k < count; k++) {
+            int i = store.indexOf(found[k]);
+            OnSpawnNpc spawn = spawnPacket(store.getNetId(i), store.getX(i), store.getY(i));
+            sender.send(viewer.connectionId, spawn);
+            PacketPool.SPAWN.release(spawn);
+        }
+    }
+
+    private void despawnCell(Viewer viewer, int cx, int cy) {
+        NpcStore store = game.getNpcStore();
+        int count = queryCell(cx, cy);
+        for (int k = 0; k < count; k++) {
+            OnDespawnNpc despawn = despawnPacket(store.getNetId(store.indexOf(found[k])));
+            sendDespawn(viewer, despawn);
+            PacketPool.DESPAWN.release(despawn);
+        }
+    }
+
+    // NPC handles inside interest cell (cx, cy), left in found[]
+    private int queryCell(int cx, int cy) {
+        float minX = cx * cellSize;
+        float minY = cy * cellSize;
+        // the box query is inclusive, keep the upper edge inside this cell
+        float maxX = Math.nextDown((cx + 1) * cellSize);
+        float maxY = Math.nextDown((cy + 1) * cellSize);
+        while (true) {
+            int count = game.getNpcIndex().queryBox(minX, minY, maxX, maxY, found);
+            if (count < found.length) {
+                return count;
+            }
+            found = new int[found.length * 2];
+        }
+    }
+
+    private interface CellVisitor {
+        void visit(int cx, int cy);
+    }
+
+    private void forWindow(int centerX, int centerY, CellVisitor visitor) {
+        for (int cy = Math.max(0, centerY - viewRadius); cy <= Math.min(cellsY - 1, centerY + viewRadius); cy++) {
+            for (int cx = Math.max(0, centerX - viewRadius); cx <= Math.min(cellsX - 1, centerX + viewRadius); cx++) {
+                visitor.visit(cx, cy);
+            }
+        }
+    }
+
+    private boolean inWindow(int centerX, int centerY, int cx, int cy) {
+        return Math.abs(cx - centerX) <= viewRadius && Math.abs(cy - centerY) <= viewRadius;
+    }
+
+    // a move queued before the despawn would reach the client after it, for an NPC it no longer has
+    private void sendDespawn(Viewer viewer, OnDespawnNpc despawn) {
+        viewer.moves.remove(despawn.id);
+        sender.send(viewer.connectionId, despawn);
+    }
+
+    // pooled, the caller releases it after sending
+    private static OnSpawnNpc spawnPacket(int netId, float x, float y) {
+        OnSpawnNpc spawn = PacketPool.SPAWN.acquire();
+        spawn.id = netId;
+        spawn.x = x;
+        spawn.y = y;
+        return spawn;
+    }
+
+    private static OnDespawnNpc despawnPacket(int netId) {
+        OnDespawnNpc despawn = PacketPool.DESPAWN.acquire();
+        despawn.id = netId;
+        return despawn;
+    }
+
+    private int cellX(float x) {
+        return Math.min(cellsX - 1, Math.max(0, (int) (x / cellSize)));
+    }
+
+    private int cellY(float y) {
+        return Math.min(cellsY - 1, Math.max(0, (int) (y / cellSize)));
+    }
+}
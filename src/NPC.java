@@ -1,71 +1,165 @@
+import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 
+// A bot of a game. Its state lives in the game's NpcStore; this object is
+// only a handle for code that wants to hold on to one bot.
 public class NPC {
-    private static int currentId = 0;
+    // how long a wander path request may wait in the shared service
+    private static final long PATH_TIMEOUT_MS = 1000;
+    // waypoint hops of a long route turned into tiles at a time
+    private static final int REFINE_HOPS = 4;
 
-    private static void incrementNextId() {
-        currentId++;
+    private final Game game;
+    private final int handle;
+
+    public NPC(Game game, float x, float y) {
+        this.game = game;
+        int netId = game.getNetIds().allocate();
+        this.handle = game.getNpcStore().add(netId, x, y);
+        game.getNpcIndex().insert(handle, x, y);
+        // with snapshots the next delta carries the spawn
+        if (game.getInterest() != null && game.getReplicator() == null) {
+            game.getInterest().npcSpawned(netId, x, y);
+        }
     }
 
-    private final int netId;
-    private final float x;
-    private final float y;
+    // one behaviour step for the bot at dense index i, driven by the game's tick loop
+    static void tick(Game game, NpcStore store, int i) {
+        if (!store.hasPath(i) && store.hasFlag(i, NpcStore.FLAG_WAITING_PATH)) {
+            CompletableFuture<Object> pendingPath = store.getPendingPath(i);
+            if (!pendingPath.isDone()) {
+                return; // still searching, try again next tick
+            }
+            Object result = pendingPath.isCompletedExceptionally() ? null : pendingPath.join();
+            store.setPendingPath(i, null);
+            if (result instanceof int[] waypoints) {
+                store.setWaypoints(i, waypoints, 0);
+            } else {
+                store.setPath(i, result == null ? null : toCompactPath(store, asPath(result), game.getWidth()));
+            }
+        }
+        if (!store.hasPath(i) && store.getWaypoints(i) != null) {
+            refineWaypoints(game, store, i);
+        }
+        if (!store.hasPath(i)) {
+            Random rand = game.random(store.getNetId(i));
+            int width = game.getWidth();
+            int x = (int) store.getX(i);
+            int y = (int) store.getY(i);
+            // only goals in the bot's own component, so the search can never flood the map and fail
+            int goal = game.getWalkableIndex().randomReachableCell(x, y, rand);
+            if (goal == -1) {
+                return;
+            }
+            int goalX = goal % width;
+            int goalY = goal / width;
+            if (Game.isLongRoute(x, y, goalX, goalY) && game.isDeterministic()) {
+                store.setWaypoints(i, game.findWaypoints(x, y, goalX, goalY), 0);
+            } else if (Game.isLongRoute(x, y, goalX, goalY)) {
+                // only the waypoints; the tiles are refined a few hops at a time as the bot walks
+                store.setPendingPath(i, Game.getPathRequests().submit(() -> game.findWaypoints(x, y, goalX, goalY),
+                        PATH_TIMEOUT_MS));
+            } else if (game.isDeterministic()) {
+                // no worker pool or timeouts, the result must not depend on timing
+                List<AStar.Node> path = game.getPathCache().findPath(goalX, goalY, x, y);
+                store.setPath(i, path == null ? null : toCompactPath(store, path, width));
+            } else {
+                // goal as source: findPath lists the destination first, so the path starts at the bot
+                store.setPendingPath(i, Game.getPathRequests().submit(game.getPathCache(), goalX, goalY, x, y,
+                        PATH_TIMEOUT_MS));
+            }
 
-    public NPC(float x, float y) {
-        this.x = x;
-        this.y = y;
-        this.netId = currentId;
-        incrementNextId();
-        this.moveThread();
+        } else {
+            moveTo(game, store, i, store.nextPathCell(i));
+        }
     }
 
-    public void moveThread() {
-        AStar aStar = new AStar(game.collisions);
-        Runnable botRunnable = () -> {
-        if (path == null || path.size() == 0) {
-            Random rand = new Random();
-            boolean foundGoodLocation = false;
-
-            while (!foundGoodLocation) {
-                int xCur = rand.nextInt((int) maxX - (int) minX + 1) + (int) minX;
-                int yCur = rand.nextInt((int) maxY - (int) minY + 1) + (int) minY;
+    // Tiles for the next few hops of the bot's long route. Drops the route once
+    // it is walked, when the bot is no longer where the route continues (a script
+    // moved it) or when a wall placed since the search blocks a hop.
+    private static void refineWaypoints(Game game, NpcStore store, int i) {
+        int[] waypoints = store.getWaypoints(i);
+        int from = store.getWaypointIndex(i);
+        int at = (int) store.getY(i) * game.getWidth() + (int) store.getX(i);
+        List<AStar.Node> path = null;
+        if (from < waypoints.length - 1 && waypoints[from] == at) {
+            path = game.getHierarchy().refine(waypoints, from, REFINE_HOPS);
+        }
+        if (path == null) {
+            store.setWaypoints(i, null, 0);
+            return;
+        }
+        store.setWaypoints(i, waypoints, Math.min(from + REFINE_HOPS, waypoints.length - 1));
+        store.setPath(i, toCompactPath(store, path, game.getWidth()));
+    }
 
-                if (game.collisions[yCur][xCur] == 0) {
-                    foundGoodLocation = true;
-                    path = aStar.findPath((int) yCur, (int) xCur, (int) y, (int) x);
-                }
-            }
+    @SuppressWarnings("unchecked")
+    private static List<AStar.Node> asPath(Object result) {
+        return (List<AStar.Node>) result;
+    }
 
+    // puts the bot at dense index i on cell (y * width + x) and queues the move
+    // for the clients; Game.step sends the queued moves (or a snapshot) once per tick
+    static void moveTo(Game game, NpcStore store, int i, int cell) {
+        int width = game.getWidth();
+        int netId = store.getNetId(i);
+        int x = cell % width;
+        int y = cell / width;
+        float oldX = store.getX(i);
+        float oldY = store.getY(i);
+        store.setPosition(i, x, y);
+        game.getNpcIndex().move(store.handleAt(i), x, y);
+        if (game.getReplicator() != null) {
+            return; // the tick's snapshot carries the new position
+        }
+        InterestManager interest = game.getInterest();
+        if (interest != null) {
+            interest.npcMoved(netId, oldX, oldY, x, y);
         } else {
-            // YOUR ELSE BLOCK GOES HERE ↓
-            Network.OnNpcMove movement = new Network.OnNpcMove();
-            movement.netID = this.netId;
-            AStar.Node node = path.get(0);
-            path.remove(0);
-            movement.x = node.col;
-            movement.y = node.row;
-            x = node.col;
-            y = node.row;
-            server.sendEveryone(movement, -1, game.getGameId());
+            game.getMoveBatch().add(netId, x, y);
         }
+    }
 
-        ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
-        executor.scheduleAtFixedRate(botRunnable, 2000, 300, TimeUnit.MILLISECONDS);
+    // sends a packet to every connection of the bot's game; headless games drop it
+    static void broadcast(Game game, Object packet) {
+        NioServer server = game.getServer();
+        if (server != null) {
+            server.sendEveryone(packet, -1, game.getGameId());
+        }
+    }
+
+    // The path's tiles after the first, in walking order. Every path handed in
+    // starts on the bot's own tile, so walking it from there would spend a tick
+    // moving in place. Null when the bot already stands on the goal.
+    private static CompactPath toCompactPath(NpcStore store, List<AStar.Node> path, int width) {
+        if (path.size() < 2) {
+            return null;
+        }
+        CompactPath compact = store.acquirePath();
+        compact.clear(width, path.get(1).x, path.get(1).y);
+        for (int k = 2; k < path.size(); k++) {
+            compact.append(path.get(k).x, path.get(k).y);
+        }
+        return compact;
     }
 
     public int getNetId() {
-        return this.netId;
+        NpcStore store = game.getNpcStore();
+        return store.getNetId(store.indexOf(handle));
     }
 
     public float getX() {
-        return this.x;
+        NpcStore store = game.getNpcStore();
+        return store.getX(store.indexOf(handle));
     }
 
     public float getY() {
-        return this.y;
+        NpcStore store = game.getNpcStore();
+        return store.getY(store.indexOf(handle));
     }
-}
 
+    int getHandle() {
+        return this.handle;
+    }
+}
@@ -0,0 +1,76 @@
+import packets.NetIds;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Lock-free allocator for one game's NPC network ids (layout in packets.NetIds).
+// Freed slots go on a Treiber stack and are handed out again before fresh
+// ones, so ids stay dense. The stack head carries a version counter in its
+// upper 32 bits to rule out ABA; releasing bumps the slot's generation, which
+// invalidates the old id and makes a second release of it a no-op.
+public class NetIdAllocator {
+
+    private final int capacity;
+    private final AtomicIntegerArray generation;
+    private final AtomicIntegerArray nextFree;
+    private final AtomicInteger highWater = new AtomicInteger();
+    // (version << 32) | (slot + 1) of the top free slot, low half 0 when the stack is empty
+    private final AtomicLong freeHead = new AtomicLong();
+
+    public NetIdAllocator(int capacity) {
+        if (capacity > NetIds.MAX_SLOTS) {
+            throw new IllegalArgumentException("at most " + NetIds.MAX_SLOTS + " slots");
+        }
+        this.capacity = capacity;
+        this.generation = new AtomicIntegerArray(capacity);
+        this.nextFree = new AtomicIntegerArray(capacity);
+    }
+
+    public int allocate() {
+        while (true) {
+            long head = freeHead.get();
+            int slot = (int) head - 1;
+            if (slot < 0) {
+                break;
+            }
+            long next = (((head >>> 32) + 1) << 32) | ((nextFree.get(slot) + 1) & 0xffffffffL);
+            if (freeHead.compareAndSet(head, next)) {
+                return NetIds.make(generation.get(slot), slot);
+            }
+        }
+        int slot = highWater.getAndIncrement();
+        if (slot >= capacity) {
+            highWater.decrementAndGet();
+            throw new IllegalStateException("all " + capacity + " net ids are in use");
+        }
+        return NetIds.make(generation.get(slot), slot);
+    }
+
+    // returns the id's slot for reuse; false if the id was already released
+    public boolean release(int netId) {
+        int slot = NetIds.slot(netId);
+        int gen = NetIds.generation(netId);
+        if (slot >= highWater.get() || !generation.compareAndSet(slot, gen, (gen + 1) & NetIds.GENERATION_MASK)) {
+            return false;
+        }
+        while (true) {
+            long head = freeHead.get();
+            nextFree.set(slot, (int) head - 1);
+            long next = (((head >>> 32) + 1) << 32) | (slot + 1);
+            if (freeHead.compareAndSet(head, next)) {
+                return true;
+            }
+        }
+    }
+
+    // true while netId is allocated and not released
+    public boolean isLive(int netId) {
+        int slot = NetIds.slot(netId);
+        return slot < highWater.get() && generation.get(slot) == NetIds.generation(netId);
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+}
@@ -0,0 +1,99 @@
+import packets.NetIds;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Hammers one allocator from several threads that allocate and release at
+// random, and checks that no slot is ever live twice, that every released id
+// stays dead, and that the slots are dense again once everything is freed.
+public class NetIdAllocatorTest {
+
+    private static final int CAPACITY = 4096;
+    private static final int THREADS = 8;
+    private static final int OPERATIONS = 200_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("=== Testing NetIdAllocator under concurrent allocate/release ===\n");
+        NetIdAllocator ids = new NetIdAllocator(CAPACITY);
+
+        System.out.println("--- Test 1: " + THREADS + " threads allocating and releasing ---");
+        // slot -> 1 + index of the thread holding it, 0 while free
+        AtomicIntegerArray owner = new AtomicIntegerArray(CAPACITY);
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int self = t + 1;
+            Thread thread = new Thread(() -> {
+                Random rand = new Random(self);
+                List<Integer> held = new ArrayList<>();
+                try {
+                    start.await();
+                    for (int i = 0; i < OPERATIONS && failure.get() == null; i++) {
+                        // at most CAPACITY / THREADS each, so the allocator never runs dry
+                        if (held.size() < CAPACITY / THREADS && (held.isEmpty() || rand.nextBoolean())) {
+                            int id = ids.allocate();
+                            if (!owner.compareAndSet(NetIds.slot(id), 0, self)) {
+                                failure.set("slot " + NetIds.slot(id) + " handed out while thread "
+                                        + owner.get(NetIds.slot(id)) + " holds it");
+                            }
+                            held.add(id);
+                        } else {
+                            int id = held.remove(rand.nextInt(held.size()));
+                            // give the slot up before the allocator can hand it out again
+                            owner.set(NetIds.slot(id), 0);
+                            if (!ids.release(id)) {
+                                failure.set("first release of " + id + " failed");
+                            } else if (ids.isLive(id) || ids.release(id)) {
+                                failure.set("released id " + id + " is still live");
+                            }
+                        }
+                    }
+                    for (int id : held) {
+                        owner.set(NetIds.slot(id), 0);
+                        ids.release(id);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        check(failure.get() == null, failure.get());
+        System.out.println("  ok: " + THREADS * OPERATIONS + " operations, no slot live twice");
+
+        System.out.println("--- Test 2: everything freed, the slots are dense again ---");
+        boolean[] seen = new boolean[CAPACITY];
+        for (int i = 0; i < CAPACITY; i++) {
+            int id = ids.allocate();
+            check(!seen[NetIds.slot(id)], "slot " + NetIds.slot(id) + " handed out twice");
+            seen[NetIds.slot(id)] = true;
+            check(ids.isLive(id), "new id " + id + " is live");
+        }
+        boolean full = false;
+        try {
+            ids.allocate();
+        } catch (IllegalStateException e) {
+            full = true;
+        }
+        check(full, "allocating past the capacity fails");
+        System.out.println("  ok: " + CAPACITY + " distinct slots, then full");
+
+        System.out.println("\n✅ NetIdAllocator test completed successfully!");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("FAILED: " + what);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+import packets.PacketCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Non-blocking TCP transport: one selector thread serves every connection.
+// Frames are a 4-byte big-endian length followed by one PacketCodec message.
+// A packet sent to many connections is encoded once into a read-only direct
+// buffer; every connection queues its own view of those bytes and the
+// selector thread drains a queue with gathering writes, so the cost of
+// serialization does not grow with the audience.
+// send and sendEveryone may be called from any thread (the game loops);
+// the Listener is called on the selector thread.
+public class NioServer implements Closeable {
+
+    public interface Listener {
+        void connected(int connectionId);
+
+        // frame is only valid during the call
+        void received(int connectionId, ByteBuffer frame);
+
+        void disconnected(int connectionId);
+    }
+
+    // clients only send small messages (acks)
+    private static final int MAX_INBOUND_FRAME_BYTES = 4096;
+    private static final int GATHER = 16;
+    // direct memory is carved out of slabs this big instead of allocated per message;
+    // also the largest frame that can be sent
+    private static final int SLAB_BYTES = 1 << 20;
+
+    private static final class Connection {
+        final int id;
+        final SocketChannel channel;
+        SelectionKey key;
+        volatile int gameId = -1;
+        // filled by senders, drained into `pending` by the selector thread
+        final Queue<ByteBuffer> outbox = new ConcurrentLinkedQueue<>();
+        final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+        final AtomicLong queuedBytes = new AtomicLong();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final ByteBuffer in = ByteBuffer.allocate(2 * MAX_INBOUND_FRAME_BYTES);
+
+        Connection(int id, SocketChannel channel) {
+            this.id = id;
+            this.channel = channel;
+        }
+    }
+
+    // per sending thread: heap scratch to encode into, and the current direct slab
+    private static final class Encoder {
+        ByteBuffer scratch = ByteBuffer.allocate(4096);
+        ByteBuffer slab = ByteBuffer.allocateDirect(SLAB_BYTES);
+    }
+
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final Listener listener;
+    private final long maxQueuedBytes;
+    private final Thread thread;
+    private final Map<Integer, Connection> connections = new ConcurrentHashMap<>();
+    private final Queue<Connection> dirty = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+    private final ByteBuffer[] gather = new ByteBuffer[GATHER];
+    private volatile boolean running = true;
+
+    // maxQueuedBytes: a connection with more unsent bytes than this is dropped as too slow
+    public NioServer(InetSocketAddress address, Listener listener, long maxQueuedBytes) throws IOException {
+        this.listener = listener;
+        this.maxQueuedBytes = maxQueuedBytes;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.thread = new Thread(this::run, "nio-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    // sendEveryone(..., gameId) only reaches connections assigned to that game
+    public void setGame(int connectionId, int gameId) {
+        Connection connection = connections.get(connectionId);
+        if (connection != null) {
+            connection.gameId = gameId;
+        }
+    }
+
+    // ------------------------------
+    // sending
+    // ------------------------------
+    // fits InterestManager.Sender
+    public void send(int connectionId, Object packet) {
+        Connection connection = connections.get(connectionId);
+        if (connection != null) {
+            enqueue(connection, encode(packet));
+        }
+    }
+
+    // one encoding shared by every connection of the game except `exceptConnectionId` (-1 for none)
+    public void sendEveryone(Object packet, int exceptConnectionId, int gameId) {
+        ByteBuffer frame = null;
+        for (Connection connection : connections.values()) {
+            if (connection.gameId == gameId && connection.id != exceptConnectionId) {
+                if (frame == null) {
+                    frame = encode(packet);
+                }
+                enqueue(connection, frame.duplicate());
+            }
+        }
+    }
+
+    // the packet as a complete frame in a read-only direct buffer
+    private ByteBuffer encode(Object packet) {
+        Encoder encoder = encoders.get();
+        ByteBuffer scratch = encoder.scratch;
+        while (true) {
+            scratch.clear();
+            try {
+                scratch.putInt(0);
+                PacketCodec.encode(packet, scratch);
+                break;
+            } catch (BufferOverflowException e) {
+                scratch = encoder.scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+        int length = scratch.position();
+        if (length > SLAB_BYTES) {
+            throw new IllegalArgumentException("packet of " + (length - 4) + " bytes is too big for a frame");
+        }
+        scratch.putInt(0, length - 4);
+        scratch.flip();
+        // slices keep their slab alive until the last one is sent and collected
+        if (encoder.slab.remaining() < length) {
+            encoder.slab = ByteBuffer.allocateDirect(SLAB_BYTES);
+        }
+        ByteBuffer slab = encoder.slab;
+        ByteBuffer frame = slab.slice();
+        frame.limit(length);
+        frame.put(scratch);
+        frame.flip();
+        slab.position(slab.position() + length);
+        return frame.asReadOnlyBuffer();
+    }
+
+    private void enqueue(Connection connection, ByteBuffer frame) {
+        connection.outbox.add(frame);
+        connection.queuedBytes.addAndGet(frame.remaining());
+        if (connection.scheduled.compareAndSet(false, true)) {
+            dirty.add(connection);
+            if (wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    // ------------------------------
+    // selector thread
+    // ------------------------------
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                wakeupPending.set(false);
+                Connection connection;
+                while ((connection = dirty.poll()) != null) {
+                    connection.scheduled.set(false);
+                    if (connection.key != null && connection.key.isValid()) {
+                        flush(connection);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(nextId.incrementAndGet(), channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.put(connection.id, connection);
+        listener.connected(connection.id);
+    }
+
+    private void read(Connection connection) {
+        ByteBuffer in = connection.in;
+        try {
+            if (connection.channel.read(in) == -1) {
+                disconnect(connection);
+                return;
+            }
+        } catch (IOException e) {
+            disconnect(connection);
+            return;
+        }
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 0 || length > MAX_INBOUND_FRAME_BYTES) {
+                disconnect(connection);
+                return;
+            }
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+            int end = in.position() + 4 + length;
+            ByteBuffer frame = in.duplicate();
+            frame.position(in.position() + 4).limit(end);
+            in.position(end);
+            try {
+                listener.received(connection.id, frame);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        in.compact();
+    }
+
+    // writes as much of the connection's queue as the socket takes, GATHER buffers per call
+    private void flush(Connection connection) {
+        if (connection.queuedBytes.get() > maxQueuedBytes) {
+            disconnect(connection);
+            return;
+        }
+        ArrayDeque<ByteBuffer> pending = connection.pending;
+        ByteBuffer frame;
+        while ((frame = connection.outbox.poll()) != null) {
+            pending.add(frame);
+        }
+        try {
+            while (!pending.isEmpty()) {
+                int n = 0;
+                for (ByteBuffer buffer : pending) {
+                    gather[n++] = buffer;
+                    if (n == GATHER) {
+                        break;
+                    }
+                }
+                long written = connection.channel.write(gather, 0, n);
+                connection.queuedBytes.addAndGet(-written);
+                while (!pending.isEmpty() && !pending.peekFirst().hasRemaining()) {
+                    pending.pollFirst();
+                }
+                if (written == 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            disconnect(connection);
+            return;
+        } finally {
+            Arrays.fill(gather, null);
+        }
+        // only ask for OP_WRITE while the socket buffer is full
+        connection.key.interestOps(pending.isEmpty()
+                ? SelectionKey.OP_READ
+                : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    private void disconnect(Connection connection) {
+        if (connections.remove(connection.id) == null) {
+            return;
+        }
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+        }
+        listener.disconnected(connection.id);
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Connection connection : connections.values()) {
+            connection.channel.close();
+        }
+        connections.clear();
+        selector.close();
+        serverChannel.close();
+    }
+}
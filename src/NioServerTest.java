@@ -0,0 +1,132 @@
+import client.NPC;
+import client.Play;
+import packets.NetIds;
+import packets.OnDespawnNpc;
+import packets.OnNpcMoveBatch;
+import packets.OnSnapshotAck;
+import packets.OnSnapshotDelta;
+import packets.OnSpawnNpc;
+import packets.PacketCodec;
+import packets.WorldState;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+// Sends packets through a real NioServer to a socket on the same machine and
+// feeds the bytes to Play.handlePackets in random slices, so frames arrive
+// split and several to a read. Then sends Play's snapshot ack the other way.
+public class NioServerTest {
+
+    private static final int GAME = 7;
+    private static final int BOTS = 200;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Testing NioServer framing with the client ===\n");
+
+        BlockingQueue<Integer> connected = new ArrayBlockingQueue<>(1);
+        BlockingQueue<Integer> acks = new ArrayBlockingQueue<>(1);
+        NioServer.Listener listener = new NioServer.Listener() {
+            @Override
+            public void connected(int connectionId) {
+                connected.add(connectionId);
+            }
+
+            @Override
+            public void received(int connectionId, ByteBuffer frame) {
+                check(PacketCodec.peekType(frame) == PacketCodec.SNAPSHOT_ACK, "client sent an ack");
+                OnSnapshotAck ack = new OnSnapshotAck();
+                PacketCodec.decode(frame, ack);
+                check(!frame.hasRemaining(), "ack fills its whole frame");
+                acks.add(ack.sequence);
+            }
+
+            @Override
+            public void disconnected(int connectionId) {
+            }
+        };
+
+        try (NioServer server = new NioServer(new InetSocketAddress("127.0.0.1", 0), listener, 1 << 24);
+             SocketChannel socket = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getPort()))) {
+            Integer connectionId = connected.poll(5, TimeUnit.SECONDS);
+            check(connectionId != null, "server saw the connection");
+            server.setGame(connectionId, GAME);
+            Play play = new Play();
+            Random rand = new Random(3);
+            ByteBuffer in = ByteBuffer.allocate(1 << 16);
+
+            System.out.println("--- Test 1: spawns, one large move batch and despawns ---");
+            OnNpcMoveBatch batch = new OnNpcMoveBatch();
+            for (int slot = 0; slot < BOTS; slot++) {
+                OnSpawnNpc spawn = new OnSpawnNpc();
+                spawn.id = NetIds.make(1, slot);
+                spawn.x = slot % 50;
+                spawn.y = slot / 50;
+                server.sendEveryone(spawn, -1, GAME);
+                batch.add(spawn.id, slot % 50 + 1, slot / 50 + 2);
+            }
+            server.sendEveryone(batch, -1, GAME);
+            for (int slot = 0; slot < BOTS; slot += 2) {
+                OnDespawnNpc despawn = new OnDespawnNpc();
+                despawn.id = NetIds.make(1, slot);
+                server.sendEveryone(despawn, -1, GAME);
+            }
+            // a snapshot last, so the client knows when everything before it has arrived
+            WorldState state = new WorldState();
+            state.clear(0);
+            state.add(NetIds.make(1, BOTS + 1), 3, 4);
+            OnSnapshotDelta snapshot = new OnSnapshotDelta();
+            WorldState.diff(new WorldState(), state, snapshot);
+            server.sendEveryone(snapshot, -1, GAME);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (play.getSnapshotSequence() != 0) {
+                check(System.nanoTime() < deadline, "every frame arrived");
+                // a random slice of whatever the socket has, so frames are cut anywhere
+                ByteBuffer slice = in.slice();
+                slice.limit(Math.min(slice.limit(), 1 + rand.nextInt(700)));
+                int read = socket.read(slice);
+                check(read != -1, "server kept the connection open");
+                in.position(in.position() + read);
+                in.flip();
+                play.handlePackets(in);
+                in.compact();
+            }
+            check(in.position() == 0, "no bytes left over after the last frame");
+            check(play.getNpcCount() == BOTS / 2 + 1, "half of the bots despawned, one spawned by the snapshot");
+            for (int slot = 1; slot < BOTS; slot += 2) {
+                NPC npc = play.getNpc(NetIds.make(1, slot));
+                check(npc != null, "bot " + slot + " is shown");
+                check(npc.moveX == (slot % 50 + 1) * 32 && npc.moveY == (slot / 50 + 2) * 32,
+                        "bot " + slot + " got its batched move");
+            }
+            System.out.println("  ok: " + play.getNpcCount() + " bots after the frames were cut into random slices");
+
+            System.out.println("--- Test 2: the client's ack frame decodes on the server ---");
+            ByteBuffer out = ByteBuffer.allocate(64);
+            check(play.writeSnapshotAck(out), "snapshot 0 needs an ack");
+            out.flip();
+            while (out.hasRemaining()) {
+                socket.write(out);
+            }
+            Integer acked = acks.poll(5, TimeUnit.SECONDS);
+            check(acked != null && acked == 0, "server received the ack for snapshot 0");
+            System.out.println("  ok: ack for snapshot " + acked);
+        } catch (IOException e) {
+            throw new IllegalStateException("FAILED: socket error", e);
+        }
+
+        System.out.println("\n✅ NioServer framing test completed successfully!");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("FAILED: " + what);
+        }
+    }
+}
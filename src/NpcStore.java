@@ -0,0 +1,233 @@
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+// Structure-of-arrays storage for the bots of one game.
+// Bot state lives in parallel primitive arrays indexed 0 .. size() - 1, so a
+// tick walks each array front to back instead of chasing one heap object per
+// bot. Removing swaps the last bot into the hole (O(1), never a compaction
+// pass); code that must hold on to a bot keeps its handle, which stays valid
+// while dense indexes move around.
+public class NpcStore {
+
+    // a path request for this bot is in flight
+    public static final int FLAG_WAITING_PATH = 1;
+    // driven by a ScriptRuntime script instead of the wander behaviour
+    public static final int FLAG_SCRIPTED = 2;
+
+    private int size = 0;
+
+    private float[] x;
+    private float[] y;
+    private int[] netId;
+    private int[] flags;
+    // path of each bot in walking order, owned by the store and recycled through pathPool
+    private CompactPath[] paths;
+    private final CompactPath.Pool pathPool = new CompactPath.Pool();
+    private CompletableFuture<?>[] pendingPath;
+    // HPA* waypoints of a long route and the one the bot's path currently ends at;
+    // the arrays are never written after they are stored, so snapshots share them
+    private int[][] waypoints;
+    private int[] waypointIndex;
+
+    // handle <-> dense index
+    private int[] handleOfIndex;
+    private int[] indexOfHandle;
+    private int[] freeHandles;
+    private int freeCount = 0;
+    private int handleCount = 0;
+
+    public NpcStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        x = new float[capacity];
+        y = new float[capacity];
+        netId = new int[capacity];
+        flags = new int[capacity];
+        paths = new CompactPath[capacity];
+        pendingPath = new CompletableFuture<?>[capacity];
+        waypoints = new int[capacity][];
+        waypointIndex = new int[capacity];
+        handleOfIndex = new int[capacity];
+        indexOfHandle = new int[capacity];
+        freeHandles = new int[capacity];
+    }
+
+    // ------------------------------
+    // add / remove
+    // ------------------------------
+    // returns the new bot's handle
+    public int add(int netId, float x, float y) {
+        if (size == this.x.length) {
+            grow();
+        }
+        int handle = freeCount > 0 ? freeHandles[--freeCount] : handleCount++;
+        int i = size++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.netId[i] = netId;
+        this.flags[i] = 0;
+        this.paths[i] = null;
+        this.pendingPath[i] = null;
+        this.waypoints[i] = null;
+        handleOfIndex[i] = handle;
+        indexOfHandle[handle] = i;
+        return handle;
+    }
+
+    public void remove(int handle) {
+        int i = indexOfHandle[handle];
+        setPath(i, null);
+        int last = --size;
+        if (i != last) {
+            x[i] = x[last];
+            y[i] = y[last];
+            netId[i] = netId[last];
+            flags[i] = flags[last];
+            paths[i] = paths[last];
+            pendingPath[i] = pendingPath[last];
+            waypoints[i] = waypoints[last];
+            waypointIndex[i] = waypointIndex[last];
+            handleOfIndex[i] = handleOfIndex[last];
+            indexOfHandle[handleOfIndex[i]] = i;
+        }
+        paths[last] = null;
+        pendingPath[last] = null;
+        waypoints[last] = null;
+        indexOfHandle[handle] = -1;
+        freeHandles[freeCount++] = handle;
+    }
+
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        netId = Arrays.copyOf(netId, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        paths = Arrays.copyOf(paths, capacity);
+        pendingPath = Arrays.copyOf(pendingPath, capacity);
+        waypoints = Arrays.copyOf(waypoints, capacity);
+        waypointIndex = Arrays.copyOf(waypointIndex, capacity);
+        handleOfIndex = Arrays.copyOf(handleOfIndex, capacity);
+        indexOfHandle = Arrays.copyOf(indexOfHandle, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+    }
+
+    // Makes this store an exact copy of `other` (snapshots and rollback).
+    // Paths are copied into this store's own pooled instances; pending path
+    // futures are shared, deterministic games never have any.
+    public void copyFrom(NpcStore other) {
+        while (x.length < other.x.length) {
+            grow();
+        }
+        for (int i = 0; i < size; i++) {
+            setPath(i, null);
+        }
+        size = other.size;
+        System.arraycopy(other.x, 0, x, 0, size);
+        System.arraycopy(other.y, 0, y, 0, size);
+        System.arraycopy(other.netId, 0, netId, 0, size);
+        System.arraycopy(other.flags, 0, flags, 0, size);
+        System.arraycopy(other.pendingPath, 0, pendingPath, 0, size);
+        System.arraycopy(other.waypoints, 0, waypoints, 0, size);
+        System.arraycopy(other.waypointIndex, 0, waypointIndex, 0, size);
+        for (int i = 0; i < size; i++) {
+            if (other.paths[i] != null) {
+                paths[i] = pathPool.acquire();
+                paths[i].copyFrom(other.paths[i]);
+            }
+        }
+        System.arraycopy(other.handleOfIndex, 0, handleOfIndex, 0, size);
+        System.arraycopy(other.indexOfHandle, 0, indexOfHandle, 0, other.handleCount);
+        System.arraycopy(other.freeHandles, 0, freeHandles, 0, other.freeCount);
+        handleCount = other.handleCount;
+        freeCount = other.freeCount;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    // dense index of a live handle, or -1 after it was removed
+    public int indexOf(int handle) {
+        return indexOfHandle[handle];
+    }
+
+    public int handleAt(int i) {
+        return handleOfIndex[i];
+    }
+
+    // ------------------------------
+    // per-bot fields, by dense index
+    // ------------------------------
+    public float getX(int i) {
+        return x[i];
+    }
+
+    public float getY(int i) {
+        return y[i];
+    }
+
+    public void setPosition(int i, float x, float y) {
+        this.x[i] = x;
+        this.y[i] = y;
+    }
+
+    public int getNetId(int i) {
+        return netId[i];
+    }
+
+    public boolean hasFlag(int i, int flag) {
+        return (flags[i] & flag) != 0;
+    }
+
+    public void setFlag(int i, int flag, boolean on) {
+        flags[i] = on ? flags[i] | flag : flags[i] & ~flag;
+    }
+
+    // true while the bot has cells left to walk
+    public boolean hasPath(int i) {
+        return paths[i] != null && paths[i].hasNext();
+    }
+
+    // empty path from the store's pool, to fill and hand to setPath
+    public CompactPath acquirePath() {
+        return pathPool.acquire();
+    }
+
+    // replaces the bot's path (null for none), the old one goes back to the pool
+    public void setPath(int i, CompactPath path) {
+        if (paths[i] != null) {
+            pathPool.release(paths[i]);
+        }
+        paths[i] = path;
+    }
+
+    // next cell (y * width + x) of the bot's path; only valid while hasPath(i)
+    public int nextPathCell(int i) {
+        return paths[i].next();
+    }
+
+    // waypoints of the bot's long route, or null while it walks a plain path
+    public int[] getWaypoints(int i) {
+        return waypoints[i];
+    }
+
+    // index into getWaypoints(i) of the waypoint the current path ends at
+    public int getWaypointIndex(int i) {
+        return waypointIndex[i];
+    }
+
+    public void setWaypoints(int i, int[] waypoints, int index) {
+        this.waypoints[i] = waypoints;
+        this.waypointIndex[i] = index;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> getPendingPath(int i) {
+        return (CompletableFuture<T>) pendingPath[i];
+    }
+
+    public void setPendingPath(int i, CompletableFuture<?> future) {
+        pendingPath[i] = future;
+        setFlag(i, FLAG_WAITING_PATH, future != null);
+    }
+}
@@ -0,0 +1,207 @@
+import java.util.*;
+
+// Bounded LRU cache in front of a PathFinder, shared by all bots of a game.
+// Entries are keyed by (source cell, destination cell) and indexed by the
+// coarse regions their path crosses, so a new wall only drops the routes that
+// went through the changed area. Unreachable results are cached too; they are
+// dropped on any change because an opened cell may connect them. An opened
+// cell can also shorten routes that never touched it, so cellOpened clears
+// the whole cache.
+public class PathCache implements PathFinder {
+
+    // marks a cached "no path" result
+    private static final List<AStar.Node> NO_PATH = Collections.emptyList();
+
+    private final PathFinder finder;
+    private final int width;
+    private final int regionSize;
+    private final int regionsX;
+    private final int capacity;
+
+    private final LinkedHashMap<Long, Entry> entries;
+    private final Map<Integer, Set<Long>> keysByRegion = new HashMap<>();
+    private final Set<Long> unreachableKeys = new HashSet<>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    // bumped by every invalidation; a search that raced with one is not cached
+    private long epoch;
+
+    private static final class Entry {
+        final List<AStar.Node> path;
+        final int[] regions;
+
+        Entry(List<AStar.Node> path, int[] regions) {
+            this.path = path;
+            this.regions = regions;
+        }
+    }
+
+    public PathCache(AStar aStar, int capacity, int regionSize) {
+        this(aStar, aStar.getMaxX(), capacity, regionSize);
+    }
+
+    // width: map width in tiles, for the cell keys
+    public PathCache(PathFinder finder, int width, int capacity, int regionSize) {
+        this.finder = finder;
+        this.width = width;
+        this.regionSize = regionSize;
+        this.regionsX = (width + regionSize - 1) / regionSize;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // Same contract as AStar.findPath. The returned list is a private copy,
+    // callers may consume it (path.remove(0)) without touching the cached route.
+    @Override
+    public List<AStar.Node> findPath(int srcX, int srcY, int dstX, int dstY) {
+        long key = key(srcX, srcY, dstX, dstY);
+        long searchEpoch;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.path == NO_PATH ? null : new ArrayList<>(entry.path);
+            }
+            misses++;
+            searchEpoch = epoch;
+        }
+
+        // search outside the lock, two bots racing on the same key just both compute it
+        List<AStar.Node> path = finder.findPath(srcX, srcY, dstX, dstY);
+        synchronized (this) {
+            // the map changed during the search, the result may cross a new wall
+            if (epoch == searchEpoch) {
+                put(key, path == null ? NO_PATH : new ArrayList<>(path));
+            }
+        }
+        return path;
+    }
+
+    private void put(long key, List<AStar.Node> path) {
+        remove(key);
+        int[] regions = regionsOf(path);
+        entries.put(key, new Entry(path, regions));
+        if (path == NO_PATH) {
+            unreachableKeys.add(key);
+        }
+        for (int region : regions) {
+            keysByRegion.computeIfAbsent(region, r -> new HashSet<>()).add(key);
+        }
+        if (entries.size() > capacity) {
+            Iterator<Long> eldest = entries.keySet().iterator();
+            remove(eldest.next());
+            evictions++;
+        }
+    }
+
+    private void remove(long key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        unreachableKeys.remove(key);
+        for (int region : entry.regions) {
+            Set<Long> keys = keysByRegion.get(region);
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty()) {
+                    keysByRegion.remove(region);
+                }
+            }
+        }
+    }
+
+    private int[] regionsOf(List<AStar.Node> path) {
+        Set<Integer> regions = new HashSet<>();
+        for (AStar.Node node : path) {
+            regions.add(region(node.x, node.y));
+        }
+        int[] result = new int[regions.size()];
+        int i = 0;
+        for (int region : regions) {
+            result[i++] = region;
+        }
+        return result;
+    }
+
+    // ------------------------------
+    // invalidation
+    // ------------------------------
+    // call when collision cell (x, y) became a wall
+    public void invalidate(int x, int y) {
+        invalidateRegion(x, y, x, y);
+    }
+
+    // call when collision cells in [x0, x1] x [y0, y1] became walls
+    public synchronized void invalidateRegion(int x0, int y0, int x1, int y1) {
+        epoch++;
+        List<Long> stale = new ArrayList<>(unreachableKeys);
+        for (int ry = y0 / regionSize; ry <= y1 / regionSize; ry++) {
+            for (int rx = x0 / regionSize; rx <= x1 / regionSize; rx++) {
+                Set<Long> keys = keysByRegion.get(ry * regionsX + rx);
+                if (keys != null) {
+                    stale.addAll(keys);
+                }
+            }
+        }
+        for (long key : stale) {
+            if (entries.containsKey(key)) {
+                remove(key);
+                invalidations++;
+            }
+        }
+    }
+
+    // call when collision cell (x, y) became walkable: any cached route may now have a shorter one
+    public synchronized void cellOpened(int x, int y) {
+        invalidations += entries.size();
+        clear();
+    }
+
+    public synchronized void clear() {
+        epoch++;
+        entries.clear();
+        keysByRegion.clear();
+        unreachableKeys.clear();
+    }
+
+    // ------------------------------
+    // stats
+    // ------------------------------
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    public synchronized long getInvalidations() {
+        return this.invalidations;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    private int region(int x, int y) {
+        return (y / regionSize) * regionsX + x / regionSize;
+    }
+
+    private long key(int srcX, int srcY, int dstX, int dstY) {
+        long src = (long) srcY * width + srcX;
+        long dst = (long) dstY * width + dstX;
+        return (src << 32) | dst;
+    }
+}
@@ -0,0 +1,8 @@
+import java.util.List;
+
+// Anything that answers AStar.findPath queries: a plain search, or a cache or
+// router in front of one. PathRequestService and the bots only see this.
+public interface PathFinder {
+    // destination-first list of nodes from (srcX, srcY) to (dstX, dstY), or null when there is none
+    List<AStar.Node> findPath(int srcX, int srcY, int dstX, int dstY);
+}
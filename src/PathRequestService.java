@@ -0,0 +1,121 @@
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Asynchronous path queries for bots of any game.
+// Requests are queued in a bounded queue and drained in batches by at most
+// `parallelism` tasks on a private ForkJoinPool, so a burst of repaths never
+// uses more workers than configured and each worker reuses its thread-local
+// search buffers across the batch. A tick submits a request and carries on;
+// the bot picks the result up from the future on a later tick.
+public class PathRequestService implements AutoCloseable {
+
+    private final ForkJoinPool pool;
+    private final BlockingQueue<Request<?>> queue;
+    private final int parallelism;
+    private final int batchSize;
+    private final AtomicInteger activeBatches = new AtomicInteger();
+
+    private static final class Request<T> {
+        final Supplier<T> search;
+        final long deadline;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Request(Supplier<T> search, long deadline) {
+            this.search = search;
+            this.deadline = deadline;
+        }
+    }
+
+    public PathRequestService(int parallelism, int maxPending, int batchSize) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.queue = new ArrayBlockingQueue<>(maxPending);
+        this.parallelism = parallelism;
+        this.batchSize = batchSize;
+    }
+
+    // Queues finder.findPath(srcX, srcY, dstX, dstY). The future completes with the
+    // path (or null when there is none), fails with TimeoutException once
+    // timeoutMillis has passed and with RejectedExecutionException when the queue
+    // is full. Cancelling it drops the request if it has not started yet.
+    public CompletableFuture<List<AStar.Node>> submit(PathFinder finder, int srcX, int srcY, int dstX, int dstY,
+                                                      long timeoutMillis) {
+        return submit(() -> finder.findPath(srcX, srcY, dstX, dstY), timeoutMillis);
+    }
+
+    // Queues any other search (HPA* waypoints, say) with the same timeout and
+    // rejection rules; the future completes with what `search` returns.
+    public <T> CompletableFuture<T> submit(Supplier<T> search, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Request<T> request = new Request<>(search, deadline);
+        if (pool.isShutdown() || !queue.offer(request)) {
+            request.future.completeExceptionally(new RejectedExecutionException("path request queue is full"));
+            return request.future;
+        }
+        request.future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        scheduleBatches();
+        return request.future;
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    private void scheduleBatches() {
+        while (!queue.isEmpty()) {
+            int active = activeBatches.get();
+            if (active >= parallelism) {
+                return;
+            }
+            if (activeBatches.compareAndSet(active, active + 1)) {
+                try {
+                    pool.execute(this::runBatch);
+                } catch (RejectedExecutionException e) {
+                    activeBatches.decrementAndGet();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void runBatch() {
+        try {
+            for (int i = 0; i < batchSize; i++) {
+                Request<?> request = queue.poll();
+                if (request == null) {
+                    break;
+                }
+                run(request);
+            }
+        } finally {
+            activeBatches.decrementAndGet();
+            scheduleBatches();
+        }
+    }
+
+    private <T> void run(Request<T> request) {
+        if (request.future.isDone()) {
+            return; // cancelled or timed out while queued
+        }
+        if (System.nanoTime() - request.deadline > 0) {
+            request.future.completeExceptionally(new TimeoutException("path request deadline passed"));
+            return;
+        }
+        try {
+            request.future.complete(request.search.get());
+        } catch (RuntimeException e) {
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    // stops the workers; queued requests fail with RejectedExecutionException
+    @Override
+    public void close() {
+        pool.shutdown();
+        Request<?> request;
+        while ((request = queue.poll()) != null) {
+            request.future.completeExceptionally(new RejectedExecutionException("path request service closed"));
+        }
+    }
+}
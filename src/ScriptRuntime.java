@@ -0,0 +1,197 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+// Runs NPC behaviours written as plain sequential code ("walk there, wait,
+// walk back") instead of tick state machines. Every script gets its own
+// thread, virtual where the JDK has them, and parks on the game's tick: the
+// tick thread hands control to each script that is due and waits until it
+// parks again. Script code therefore runs inside the tick, one script at a
+// time, and can touch the game's NpcStore like NPC.tick does.
+// start/stop and tick must be called from the game's loop.
+public class ScriptRuntime {
+
+    // how long a walkTo path request may wait in the shared service
+    private static final long PATH_TIMEOUT_MS = 1000;
+
+    // behaviour code, runs until it returns or the bot is stopped
+    public interface Behaviour {
+        void run(Context context) throws InterruptedException;
+    }
+
+    private final Game game;
+    private final ThreadFactory threads;
+    private final PriorityQueue<Script> due = new PriorityQueue<>((a, b) -> Long.compare(a.wakeTick, b.wakeTick));
+    private long tick = 0;
+    // the script tick() has handed control to, if any
+    private Script running;
+
+    // keyed on the NPC, not its store handle: handles are recycled once a bot is removed
+    private final class Script {
+        final NPC npc;
+        final Semaphore resume = new Semaphore(0);
+        final Semaphore parked = new Semaphore(0);
+        long wakeTick;
+        Thread thread;
+        volatile boolean done = false;
+        // set by stop(); the bot's handle may already belong to another bot
+        boolean stopped = false;
+
+        Script(NPC npc) {
+            this.npc = npc;
+        }
+
+        int index() {
+            return game.getNpcStore().indexOf(npc.getHandle());
+        }
+    }
+
+    public ScriptRuntime(Game game, ThreadFactory threads) {
+        this.game = game;
+        this.threads = threads;
+    }
+
+    // Thread.ofVirtual().factory() where the JDK has virtual threads, daemon platform threads otherwise
+    public static ThreadFactory virtualThreads() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return runnable -> {
+                Thread thread = new Thread(runnable, "npc-script");
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+    }
+
+    // ------------------------------
+    // scripts
+    // ------------------------------
+    // runs `behaviour` for the bot from the next tick on; the wander behaviour pauses until it ends
+    public void start(NPC npc, Behaviour behaviour) {
+        Script script = new Script(npc);
+        game.getNpcStore().setFlag(script.index(), NpcStore.FLAG_SCRIPTED, true);
+        Context context = new Context(script);
+        script.thread = threads.newThread(() -> {
+            try {
+                script.resume.acquire();
+                behaviour.run(context);
+            } catch (InterruptedException e) {
+                // stopped
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                script.done = true;
+                script.parked.release();
+            }
+        });
+        script.wakeTick = tick + 1;
+        script.thread.start();
+        due.add(script);
+    }
+
+    // ends the bot's script and hands the bot back to the wander behaviour; call it
+    // before the bot is removed from the store
+    public void stop(NPC npc) {
+        Iterator<Script> scripts = due.iterator();
+        while (scripts.hasNext()) {
+            Script script = scripts.next();
+            if (script.npc == npc) {
+                scripts.remove();
+                script.stopped = true;
+                // parked in resume.acquire(), so it just unwinds on its own thread
+                script.thread.interrupt();
+            }
+        }
+        if (running != null && running.npc == npc) {
+            // a script stopping its own bot; it ends at its next waitTicks
+            running.stopped = true;
+            running.thread.interrupt();
+        }
+        NpcStore store = game.getNpcStore();
+        int i = store.indexOf(npc.getHandle());
+        if (i != -1) {
+            store.setFlag(i, NpcStore.FLAG_SCRIPTED, false);
+        }
+    }
+
+    public int getScriptCount() {
+        return due.size();
+    }
+
+    // called once per game tick, resumes every script whose wait is over
+    void tick() {
+        tick++;
+        while (!due.isEmpty() && due.peek().wakeTick <= tick) {
+            Script script = due.poll();
+            running = script;
+            script.resume.release();
+            script.parked.acquireUninterruptibly();
+            running = null;
+            if (script.done) {
+                int i = script.index();
+                if (!script.stopped && i != -1) {
+                    game.getNpcStore().setFlag(i, NpcStore.FLAG_SCRIPTED, false);
+                }
+            } else if (!script.stopped) {
+                due.add(script);
+            }
+        }
+    }
+
+    // ------------------------------
+    // script API
+    // ------------------------------
+    // what a behaviour can do with its bot; every call runs inside the current tick
+    public final class Context {
+        private final Script script;
+
+        private Context(Script script) {
+            this.script = script;
+        }
+
+        // parks until `ticks` game ticks have passed
+        public void waitTicks(int ticks) throws InterruptedException {
+            script.wakeTick = tick + Math.max(1, ticks);
+            script.parked.release();
+            script.resume.acquire();
+        }
+
+        public float getX() {
+            return game.getNpcStore().getX(script.index());
+        }
+
+        public float getY() {
+            return game.getNpcStore().getY(script.index());
+        }
+
+        public Game getGame() {
+            return game;
+        }
+
+        // walks to (x, y) one tile per tick, false if there is no path
+        public boolean walkTo(int x, int y) throws InterruptedException {
+            // goal as source: findPath lists the destination first, so the path starts at the bot
+            CompletableFuture<List<AStar.Node>> request = Game.getPathRequests().submit(game.getPathCache(),
+                    x, y, (int) getX(), (int) getY(), PATH_TIMEOUT_MS);
+            while (!request.isDone()) {
+                waitTicks(1);
+            }
+            List<AStar.Node> path = request.isCompletedExceptionally() ? null : request.join();
+            if (path == null) {
+                return false;
+            }
+            int width = game.getWidth();
+            for (int k = 1; k < path.size(); k++) {
+                waitTicks(1);
+                NpcStore store = game.getNpcStore();
+                NPC.moveTo(game, store, script.index(), path.get(k).y * width + path.get(k).x);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+// Checks that a stopped script lets go of its bot, even when a new bot gets the old store handle
+public class ScriptRuntimeTest {
+    public static void main(String[] args) {
+        System.out.println("=== Testing ScriptRuntime ===\n");
+
+        Game game = new Game(1, new int[16][16]);
+        ScriptRuntime scripts = game.getScripts();
+        NpcStore store = game.getNpcStore();
+
+        System.out.println("--- Test 1: stop clears the scripted flag right away ---");
+        NPC first = new NPC(game, 1, 1);
+        scripts.start(first, context -> {
+            while (true) {
+                context.waitTicks(3);
+            }
+        });
+        game.step();
+        check(store.hasFlag(store.indexOf(first.getHandle()), NpcStore.FLAG_SCRIPTED), "first bot is scripted");
+        game.removeBot(first);
+        check(scripts.getScriptCount() == 0, "stopped script left the wake queue");
+
+        System.out.println("--- Test 2: a respawned bot on the same handle keeps its own script ---");
+        NPC second = new NPC(game, 2, 2);
+        check(second.getHandle() == first.getHandle(), "handle was recycled");
+        int[] wakeUps = {0};
+        scripts.start(second, context -> {
+            while (true) {
+                wakeUps[0]++;
+                context.waitTicks(1);
+            }
+        });
+        for (int t = 0; t < 10; t++) {
+            game.step();
+            check(store.hasFlag(store.indexOf(second.getHandle()), NpcStore.FLAG_SCRIPTED),
+                    "second bot still scripted after tick " + t);
+        }
+        check(wakeUps[0] == 10, "second script ran every tick, got " + wakeUps[0]);
+        check(scripts.getScriptCount() == 1, "one live script");
+
+        System.out.println("--- Test 3: a script that stops its own bot ---");
+        NPC third = new NPC(game, 3, 3);
+        scripts.start(third, context -> {
+            scripts.stop(third);
+            context.waitTicks(1);
+            throw new IllegalStateException("script kept running after stopping itself");
+        });
+        game.step();
+        game.step();
+        check(!store.hasFlag(store.indexOf(third.getHandle()), NpcStore.FLAG_SCRIPTED), "third bot wanders again");
+        check(scripts.getScriptCount() == 1, "only the second script left");
+
+        game.removeBot(second);
+        System.out.println("\n✅ ScriptRuntime test completed successfully!");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("FAILED: " + what);
+        }
+        System.out.println("  ok: " + what);
+    }
+}
@@ -0,0 +1,135 @@
+import java.util.Arrays;
+
+// Reusable per-thread buffers for the primitive path searches.
+// Every array is indexed by cell = y * maxX + x. Instead of clearing the
+// arrays between queries a generation counter is bumped: a cell's gScore
+// and parent are only valid while open[cell] == generation, and a cell is
+// closed while closed[cell] == generation.
+final class SearchScratch {
+
+    private static final ThreadLocal<SearchScratch> LOCAL = ThreadLocal.withInitial(SearchScratch::new);
+    // second set for searches that run two frontiers at once (bidirectional)
+    private static final ThreadLocal<SearchScratch> SECONDARY = ThreadLocal.withInitial(SearchScratch::new);
+
+    int[] gScore = new int[0];
+    int[] parent = new int[0];
+    int[] open = new int[0];
+    int[] closed = new int[0];
+    int generation = 0;
+
+    // binary min-heap of (key, cell) pairs, lazy deletion (stale entries are skipped on poll)
+    private int[] heapKey = new int[64];
+    private int[] heapCell = new int[64];
+    private int heapSize = 0;
+
+    private SearchScratch() {
+    }
+
+    // returns this thread's scratch, sized for at least `cells` cells and reset for a new query
+    static SearchScratch acquire(int cells) {
+        SearchScratch scratch = LOCAL.get();
+        scratch.begin(cells);
+        return scratch;
+    }
+
+    // an independent second scratch for this thread, usable together with acquire()
+    static SearchScratch acquireSecondary(int cells) {
+        SearchScratch scratch = SECONDARY.get();
+        scratch.begin(cells);
+        return scratch;
+    }
+
+    private void begin(int cells) {
+        if (gScore.length < cells) {
+            gScore = new int[cells];
+            parent = new int[cells];
+            open = new int[cells];
+            closed = new int[cells];
+            generation = 0;
+        }
+        generation++;
+        if (generation == 0) {
+            // wrapped around, old stamps could look current again
+            Arrays.fill(open, 0);
+            Arrays.fill(closed, 0);
+            generation = 1;
+        }
+        heapSize = 0;
+    }
+
+    boolean isOpen(int cell) {
+        return open[cell] == generation;
+    }
+
+    boolean isClosed(int cell) {
+        return closed[cell] == generation;
+    }
+
+    void close(int cell) {
+        closed[cell] = generation;
+    }
+
+    // records a (better) route to cell; the caller pushes it on the heap
+    void relax(int cell, int g, int from) {
+        open[cell] = generation;
+        gScore[cell] = g;
+        parent[cell] = from;
+    }
+
+    // ------------------------------
+    // heap
+    // ------------------------------
+    boolean heapEmpty() {
+        return heapSize == 0;
+    }
+
+    int heapSize() {
+        return heapSize;
+    }
+
+    int peekKey() {
+        return heapKey[0];
+    }
+
+    void push(int cell, int key) {
+        if (heapSize == heapKey.length) {
+            heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+            heapCell = Arrays.copyOf(heapCell, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heapKey[p] <= key) {
+                break;
+            }
+            heapKey[i] = heapKey[p];
+            heapCell[i] = heapCell[p];
+            i = p;
+        }
+        heapKey[i] = key;
+        heapCell[i] = cell;
+    }
+
+    int poll() {
+        int top = heapCell[0];
+        int key = heapKey[--heapSize];
+        int cell = heapCell[heapSize];
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int c = 2 * i + 1;
+            if (c + 1 < heapSize && heapKey[c + 1] < heapKey[c]) {
+                c++;
+            }
+            if (key <= heapKey[c]) {
+                break;
+            }
+            heapKey[i] = heapKey[c];
+            heapCell[i] = heapCell[c];
+            i = c;
+        }
+        heapKey[i] = key;
+        heapCell[i] = cell;
+        return top;
+    }
+}
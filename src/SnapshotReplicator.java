@@ -0,0 +1,139 @@
+import packets.OnSnapshotAck;
+import packets.OnSnapshotDelta;
+import packets.PacketCodec;
+import packets.PacketPool;
+import packets.WorldState;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Delta-compressed NPC replication for one game, see Game.enableSnapshots.
+// After every tick the positions of all bots are captured into a ring of the
+// last `history` snapshots. Each client is sent the changes between the
+// newest snapshot and the last one it acknowledged (or everything, when it
+// has acknowledged nothing still in the ring). A lost packet costs nothing:
+// the next one is diffed against the same older base and covers it.
+// Acknowledgements may arrive on any thread (the transport's); everything
+// else must be called from the game's loop.
+public class SnapshotReplicator {
+
+    private final InterestManager.Sender sender;
+    private final WorldState[] ring;
+    private final WorldState empty = new WorldState();
+    private volatile int sequence = -1;
+
+    // connection id -> newest acknowledged sequence, -1 for none
+    private final Map<Integer, Integer> acked = new ConcurrentHashMap<>();
+
+    // deltas of the current sequence, one per base ring slot plus one from nothing;
+    // clients that acknowledged the same snapshot share the packet
+    private final OnSnapshotDelta[] deltas;
+    private long[] order = new long[64];
+
+    public SnapshotReplicator(int history, InterestManager.Sender sender) {
+        if (history < 1 || history > WorldState.MAX_HISTORY) {
+            throw new IllegalArgumentException("history must be between 1 and " + WorldState.MAX_HISTORY);
+        }
+        this.sender = sender;
+        this.ring = new WorldState[history];
+        this.deltas = new OnSnapshotDelta[history + 1];
+        for (int i = 0; i < history; i++) {
+            ring[i] = new WorldState();
+        }
+        for (int i = 0; i <= history; i++) {
+            deltas[i] = new OnSnapshotDelta();
+            deltas[i].sequence = -1;
+        }
+    }
+
+    // ------------------------------
+    // clients
+    // ------------------------------
+    public void addClient(int connectionId) {
+        acked.put(connectionId, -1);
+    }
+
+    public void removeClient(int connectionId) {
+        acked.remove(connectionId);
+    }
+
+    // acknowledgements arrive out of order; only newer ones for sent snapshots count
+    public void acknowledge(int connectionId, int ackedSequence) {
+        if (ackedSequence <= sequence) {
+            acked.computeIfPresent(connectionId, (id, current) -> Math.max(current, ackedSequence));
+        }
+    }
+
+    // A frame from the client, e.g. from NioServer.Listener.received. Returns
+    // false when it is not an OnSnapshotAck, for the caller to handle.
+    public boolean received(int connectionId, ByteBuffer frame) {
+        if (!frame.hasRemaining() || PacketCodec.peekType(frame) != PacketCodec.SNAPSHOT_ACK) {
+            return false;
+        }
+        OnSnapshotAck ack = PacketPool.SNAPSHOT_ACK.acquire();
+        PacketCodec.decode(frame, ack);
+        acknowledge(connectionId, ack.sequence);
+        PacketPool.SNAPSHOT_ACK.release(ack);
+        return true;
+    }
+
+    // ------------------------------
+    // snapshots
+    // ------------------------------
+    // captures the game's state as the next snapshot and sends every client its delta
+    void tick(NpcStore store) {
+        capture(store);
+        publish();
+    }
+
+    private void capture(NpcStore store) {
+        int n = store.size();
+        if (order.length < n) {
+            order = new long[Math.max(n, order.length * 2)];
+        }
+        // net ids are non-negative, so sorting (id, index) pairs sorts by id
+        for (int i = 0; i < n; i++) {
+            order[i] = (long) store.getNetId(i) << 32 | i;
+        }
+        Arrays.sort(order, 0, n);
+        sequence++;
+        WorldState state = ring[sequence % ring.length];
+        state.clear(sequence);
+        for (int k = 0; k < n; k++) {
+            int i = (int) order[k];
+            state.add(store.getNetId(i), (int) store.getX(i), (int) store.getY(i));
+        }
+    }
+
+    private void publish() {
+        WorldState current = ring[sequence % ring.length];
+        for (Map.Entry<Integer, Integer> client : acked.entrySet()) {
+            int base = client.getValue();
+            int slot;
+            WorldState baseState;
+            if (base >= 0 && sequence - base < ring.length) {
+                slot = base % ring.length;
+                baseState = ring[slot];
+            } else {
+                slot = ring.length;
+                baseState = empty;
+            }
+            OnSnapshotDelta delta = deltas[slot];
+            if (delta.sequence != sequence) {
+                WorldState.diff(baseState, current, delta);
+            }
+            sender.send(client.getKey(), delta);
+        }
+    }
+
+    public int getSequence() {
+        return this.sequence;
+    }
+
+    // newest sequence the client acknowledged, -1 for none or an unknown client
+    public int getAcked(int connectionId) {
+        return acked.getOrDefault(connectionId, -1);
+    }
+}
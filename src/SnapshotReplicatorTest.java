@@ -0,0 +1,192 @@
+import packets.OnSnapshotDelta;
+import packets.PacketCodec;
+import packets.WorldState;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Runs a replicator over a store whose bots spawn, move and despawn every tick,
+// with clients that lose deltas and acks and whose acks arrive late and out of
+// order. Every delta a client receives, applied to the snapshot it was diffed
+// against, must reproduce the store as it was captured.
+public class SnapshotReplicatorTest {
+
+    private static final int TICKS = 2000;
+    private static final int HISTORY = 8;
+    // chance that a delta or an ack is lost, per client
+    private static final double[] LOSS = {0, 0.3, 0.8};
+
+    private static final class Client {
+        final int connectionId;
+        final double loss;
+        final WorldState[] snapshots = new WorldState[WorldState.MAX_HISTORY];
+        final List<Integer> pendingAcks = new ArrayList<>();
+        final List<OnSnapshotDelta> inbox = new ArrayList<>();
+        int applied;
+        int fromScratch;
+
+        Client(int connectionId, double loss) {
+            this.connectionId = connectionId;
+            this.loss = loss;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("=== Testing SnapshotReplicator deltas against the acked baseline ===\n");
+        Random rand = new Random(6);
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < LOSS.length; i++) {
+            clients.add(new Client(100 + i, LOSS[i]));
+        }
+
+        // every packet goes through the codec, as it would on the wire
+        SnapshotReplicator replicator = new SnapshotReplicator(HISTORY, (connectionId, packet) -> {
+            buffer.clear();
+            PacketCodec.encode(packet, buffer);
+            buffer.flip();
+            OnSnapshotDelta delta = new OnSnapshotDelta();
+            PacketCodec.decode(buffer, delta);
+            check(!buffer.hasRemaining(), "delta is decoded to the last byte");
+            clients.get(connectionId - 100).inbox.add(delta);
+        });
+        for (Client client : clients) {
+            replicator.addClient(client.connectionId);
+        }
+
+        NpcStore store = new NpcStore(16);
+        NetIdAllocator netIds = new NetIdAllocator(1 << 12);
+        List<Integer> handles = new ArrayList<>();
+
+        System.out.println("--- Test 1: " + TICKS + " ticks with lost and reordered packets ---");
+        for (int tick = 0; tick < TICKS; tick++) {
+            mutate(store, netIds, handles, rand);
+            replicator.tick(store);
+            WorldState expected = capture(store, replicator.getSequence());
+
+            for (Client client : clients) {
+                String what = "client " + client.connectionId + " tick " + tick;
+                check(client.inbox.size() == 1, what + ": one delta per tick");
+                OnSnapshotDelta delta = client.inbox.remove(0);
+                int acked = replicator.getAcked(client.connectionId);
+                check(delta.sequence == replicator.getSequence(), what + ": delta is for the newest snapshot");
+                check(delta.baseSequence == (replicator.getSequence() - acked < HISTORY ? acked : -1),
+                        what + ": delta is diffed against the acked snapshot " + acked);
+                if (rand.nextDouble() >= client.loss) {
+                    WorldState base = new WorldState();
+                    if (delta.baseSequence >= 0) {
+                        base = client.snapshots[delta.baseSequence % WorldState.MAX_HISTORY];
+                        check(base != null && base.sequence == delta.baseSequence,
+                                what + ": client still keeps base " + delta.baseSequence);
+                    } else {
+                        client.fromScratch++;
+                    }
+                    WorldState next = new WorldState();
+                    WorldState.apply(base, delta, next);
+                    checkSame(next, expected, what);
+                    client.snapshots[next.sequence % WorldState.MAX_HISTORY] = next;
+                    client.applied++;
+                    if (rand.nextDouble() >= client.loss) {
+                        client.pendingAcks.add(next.sequence);
+                    }
+                }
+                // acks in flight arrive in any order, some several ticks late
+                for (int k = client.pendingAcks.size() - 1; k >= 0; k--) {
+                    if (rand.nextBoolean()) {
+                        int ack = client.pendingAcks.remove(rand.nextInt(client.pendingAcks.size()));
+                        replicator.acknowledge(client.connectionId, ack);
+                    }
+                }
+            }
+        }
+        for (Client client : clients) {
+            System.out.println("  ok: client with " + (int) (client.loss * 100) + "% loss applied "
+                    + client.applied + " deltas, " + client.fromScratch + " of them from nothing");
+        }
+
+        System.out.println("--- Test 2: a client that missed everything catches up in one delta ---");
+        int lateId = 200;
+        List<OnSnapshotDelta> late = new ArrayList<>();
+        SnapshotReplicator single = new SnapshotReplicator(HISTORY, (connectionId, packet) -> {
+            buffer.clear();
+            PacketCodec.encode(packet, buffer);
+            buffer.flip();
+            OnSnapshotDelta delta = new OnSnapshotDelta();
+            PacketCodec.decode(buffer, delta);
+            late.add(delta);
+        });
+        single.addClient(lateId);
+        for (int tick = 0; tick < 3 * HISTORY; tick++) {
+            mutate(store, netIds, handles, rand);
+            single.tick(store);
+        }
+        // acked long ago, so the base has left the ring
+        single.acknowledge(lateId, 0);
+        mutate(store, netIds, handles, rand);
+        single.tick(store);
+        OnSnapshotDelta last = late.get(late.size() - 1);
+        check(last.baseSequence == -1, "a base older than the ring is not used");
+        WorldState caughtUp = new WorldState();
+        WorldState.apply(new WorldState(), last, caughtUp);
+        checkSame(caughtUp, capture(store, single.getSequence()), "late client");
+        System.out.println("  ok: " + caughtUp.count + " bots from one full delta");
+
+        System.out.println("\n✅ SnapshotReplicator test completed successfully!");
+    }
+
+    // spawns, despawns and moves a few bots, keeping positions on the u16 tile grid
+    private static void mutate(NpcStore store, NetIdAllocator netIds, List<Integer> handles, Random rand) {
+        int spawns = rand.nextInt(4);
+        for (int k = 0; k < spawns && handles.size() < 300; k++) {
+            handles.add(store.add(netIds.allocate(), rand.nextInt(1000), rand.nextInt(1000)));
+        }
+        int despawns = rand.nextInt(4);
+        for (int k = 0; k < despawns && !handles.isEmpty(); k++) {
+            int handle = handles.remove(rand.nextInt(handles.size()));
+            netIds.release(store.getNetId(store.indexOf(handle)));
+            store.remove(handle);
+        }
+        for (int i = 0; i < store.size(); i++) {
+            if (rand.nextInt(3) == 0) {
+                float x = Math.max(0, Math.min(65535, store.getX(i) + rand.nextInt(3) - 1));
+                float y = Math.max(0, Math.min(65535, store.getY(i) + rand.nextInt(3) - 1));
+                store.setPosition(i, x, y);
+            }
+        }
+    }
+
+    // the store as the client should see it, sorted by net id
+    private static WorldState capture(NpcStore store, int sequence) {
+        long[] order = new long[store.size()];
+        for (int i = 0; i < store.size(); i++) {
+            order[i] = (long) store.getNetId(i) << 32 | i;
+        }
+        Arrays.sort(order);
+        WorldState state = new WorldState();
+        state.clear(sequence);
+        for (long entry : order) {
+            int i = (int) entry;
+            state.add(store.getNetId(i), (int) store.getX(i), (int) store.getY(i));
+        }
+        return state;
+    }
+
+    private static void checkSame(WorldState actual, WorldState expected, String what) {
+        check(actual.sequence == expected.sequence, what + ": sequence " + actual.sequence);
+        check(actual.count == expected.count, what + ": " + actual.count + " bots, expected " + expected.count);
+        for (int i = 0; i < expected.count; i++) {
+            check(actual.ids[i] == expected.ids[i], what + ": bot " + i + " is " + actual.ids[i]);
+            check(actual.xs[i] == expected.xs[i] && actual.ys[i] == expected.ys[i],
+                    what + ": bot " + actual.ids[i] + " position");
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("FAILED: " + what);
+        }
+    }
+}
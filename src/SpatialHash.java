@@ -0,0 +1,219 @@
+import java.util.Arrays;
+
+// Uniform grid index of entity positions for proximity queries.
+// Entities are identified by their NpcStore handle. Each grid cell keeps an
+// intrusive doubly linked list through per-handle next/prev arrays, so
+// insert, move and remove are O(1) and queries only visit the cells that
+// overlap the query area. Queries write handles into a caller-owned int[]
+// and return how many were found; nothing is allocated per call.
+// Not thread-safe: update and query it from the game's tick.
+public class SpatialHash {
+
+    private static final int NONE = -1;
+
+    private final float cellSize;
+    private final int cellsX;
+    private final int cellsY;
+    private final int[] cellHead;
+
+    // per handle
+    private int[] cellOf = new int[0];
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private float[] px = new float[0];
+    private float[] py = new float[0];
+
+    // k-nearest scratch
+    private float[] bestDistance = new float[0];
+
+    // covers [0, width) x [0, height); positions outside are clamped to the border cells
+    public SpatialHash(float width, float height, float cellSize) {
+        this.cellSize = cellSize;
+        this.cellsX = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.cellsY = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.cellHead = new int[cellsX * cellsY];
+        Arrays.fill(cellHead, NONE);
+    }
+
+    // ------------------------------
+    // updates
+    // ------------------------------
+    public void insert(int handle, float x, float y) {
+        if (handle >= cellOf.length) {
+            grow(handle + 1);
+        }
+        px[handle] = x;
+        py[handle] = y;
+        link(handle, cellIndex(x, y));
+    }
+
+    public void move(int handle, float x, float y) {
+        px[handle] = x;
+        py[handle] = y;
+        int cell = cellIndex(x, y);
+        if (cell != cellOf[handle]) {
+            unlink(handle);
+            link(handle, cell);
+        }
+    }
+
+    public void remove(int handle) {
+        if (handle < cellOf.length && cellOf[handle] != NONE) {
+            unlink(handle);
+        }
+    }
+
+    private void link(int handle, int cell) {
+        cellOf[handle] = cell;
+        prev[handle] = NONE;
+        next[handle] = cellHead[cell];
+        if (cellHead[cell] != NONE) {
+            prev[cellHead[cell]] = handle;
+        }
+        cellHead[cell] = handle;
+    }
+
+    private void unlink(int handle) {
+        if (prev[handle] != NONE) {
+            next[prev[handle]] = next[handle];
+        } else {
+            cellHead[cellOf[handle]] = next[handle];
+        }
+        if (next[handle] != NONE) {
+            prev[next[handle]] = prev[handle];
+        }
+        cellOf[handle] = NONE;
+    }
+
+    private void grow(int minimum) {
+        int capacity = Math.max(minimum, Math.max(16, cellOf.length * 2));
+        int old = cellOf.length;
+        cellOf = Arrays.copyOf(cellOf, capacity);
+        Arrays.fill(cellOf, old, capacity, NONE);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        px = Arrays.copyOf(px, capacity);
+        py = Arrays.copyOf(py, capacity);
+    }
+
+    // ------------------------------
+    // queries
+    // ------------------------------
+    // handles within `radius` of (x, y), at most out.length of them
+    public int queryRadius(float x, float y, float radius, int[] out) {
+        int count = 0;
+        float r2 = radius * radius;
+        int x0 = cellX(x - radius);
+        int x1 = cellX(x + radius);
+        int y0 = cellY(y - radius);
+        int y1 = cellY(y + radius);
+        for (int cy = y0; cy <= y1; cy++) {
+            for (int cx = x0; cx <= x1; cx++) {
+                for (int h = cellHead[cy * cellsX + cx]; h != NONE; h = next[h]) {
+                    float dx = px[h] - x;
+                    float dy = py[h] - y;
+                    if (dx * dx + dy * dy <= r2) {
+                        if (count == out.length) {
+                            return count;
+                        }
+                        out[count++] = h;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // handles inside [minX, maxX] x [minY, maxY], at most out.length of them
+    public int queryBox(float minX, float minY, float maxX, float maxY, int[] out) {
+        int count = 0;
+        for (int cy = cellY(minY); cy <= cellY(maxY); cy++) {
+            for (int cx = cellX(minX); cx <= cellX(maxX); cx++) {
+                for (int h = cellHead[cy * cellsX + cx]; h != NONE; h = next[h]) {
+                    if (px[h] >= minX && px[h] <= maxX && py[h] >= minY && py[h] <= maxY) {
+                        if (count == out.length) {
+                            return count;
+                        }
+                        out[count++] = h;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // The out.length nearest handles to (x, y), closest first, skipping `exclude`
+    // (pass -1 to keep everything). Visits rings of cells outwards and stops once
+    // the next ring cannot hold anything closer than the current k-th result.
+    public int queryNearest(float x, float y, int exclude, int[] out) {
+        int k = out.length;
+        if (k == 0) {
+            return 0;
+        }
+        if (bestDistance.length < k) {
+            bestDistance = new float[k];
+        }
+        int count = 0;
+        int ccx = cellX(x);
+        int ccy = cellY(y);
+        int maxRing = Math.max(cellsX, cellsY);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            if (count == k) {
+                float reach = (ring - 1) * cellSize;
+                if (reach > 0 && reach * reach > bestDistance[k - 1]) {
+                    break;
+                }
+            }
+            for (int cy = ccy - ring; cy <= ccy + ring; cy++) {
+                if (cy < 0 || cy >= cellsY) {
+                    continue;
+                }
+                // full rows at the top and bottom of the ring, only the two side cells in between
+                int step = (cy == ccy - ring || cy == ccy + ring) ? 1 : Math.max(1, 2 * ring);
+                for (int cx = ccx - ring; cx <= ccx + ring; cx += step) {
+                    if (cx < 0 || cx >= cellsX) {
+                        continue;
+                    }
+                    for (int h = cellHead[cy * cellsX + cx]; h != NONE; h = next[h]) {
+                        if (h == exclude) {
+                            continue;
+                        }
+                        float dx = px[h] - x;
+                        float dy = py[h] - y;
+                        count = offer(out, count, h, dx * dx + dy * dy);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    // insertion into the sorted best-k list
+    private int offer(int[] out, int count, int handle, float distance) {
+        int k = out.length;
+        if (count == k && distance >= bestDistance[k - 1]) {
+            return count;
+        }
+        int i = count < k ? count++ : k - 1;
+        while (i > 0 && bestDistance[i - 1] > distance) {
+            bestDistance[i] = bestDistance[i - 1];
+            out[i] = out[i - 1];
+            i--;
+        }
+        bestDistance[i] = distance;
+        out[i] = handle;
+        return count;
+    }
+
+    private int cellIndex(float x, float y) {
+        return cellY(y) * cellsX + cellX(x);
+    }
+
+    private int cellX(float x) {
+        return Math.min(cellsX - 1, Math.max(0, (int) (x / cellSize)));
+    }
+
+    private int cellY(float y) {
+        return Math.min(cellsY - 1, Math.max(0, (int) (y / cellSize)));
+    }
+}
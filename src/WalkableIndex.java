@@ -0,0 +1,383 @@
+import java.util.Arrays;
+import java.util.Random;
+
+// Walkable tiles of a collision map, labelled by connected component: two
+// tiles are mutually reachable exactly when they carry the same label.
+// Labels are kept per 64-tile word of the map rather than per tile. A word
+// whose walkable tiles all belong to one component, which is nearly every
+// word, costs one int; only words split between components keep a label per
+// tile. A 4096x4096 map needs about 1 MB on top of its 2 MB BitGrid.
+// Opening a tile only merges the components around it (union-find over the
+// labels). Closing one may split a component, so it marks the index dirty and
+// refresh() relabels the whole map once, at the start of the next tick; until
+// then tiles split apart still count as reachable, never the other way round.
+// Edits, refresh and the random draws belong to the game's loop; componentOf
+// and isReachable may be called from any thread.
+public class WalkableIndex {
+
+    // word label of a word without walkable tiles
+    private static final int NONE = -1;
+    // random draws inside a component's bounding box before falling back to counting its tiles
+    private static final int SAMPLE_TRIES = 64;
+
+    private final BitGrid map;
+    private final int maxX;
+    private final int maxY;
+    private final int wordsPerRow;
+
+    // per map word (y * wordsPerRow + x / 64): the label of its walkable tiles, NONE, or
+    // -2 - k when they are split between components; tile x then has label mixed[k * 64 + x % 64].
+    // parent[label] links merged labels to their component, parent[root] == root.
+    private int[] wordLabel;
+    private int[] mixed;
+    private int[] parent;
+    private int mixedCount;
+    private int labelCount;
+    // per root label: tile count, and bounding box as minX, minY, maxX, maxY (inclusive) at 4 * label
+    private int[] size;
+    private int[] bounds;
+    private int components;
+    private int walkable;
+    // a tile was closed since the last relabel, components may have split
+    private boolean dirty;
+
+    // the label arrays as other threads see them, see grown()
+    private volatile Labels labels;
+
+    private static final class Labels {
+        final int[] wordLabel;
+        final int[] mixed;
+        final int[] parent;
+
+        Labels(int[] wordLabel, int[] mixed, int[] parent) {
+            this.wordLabel = wordLabel;
+            this.mixed = mixed;
+            this.parent = parent;
+        }
+    }
+
+    public WalkableIndex(BitGrid map) {
+        this.map = map;
+        this.maxX = map.getWidth();
+        this.maxY = map.getHeight();
+        this.wordsPerRow = (maxX + 63) >>> 6;
+        this.rebuild();
+    }
+
+    // ------------------------------
+    // labelling
+    // ------------------------------
+    // Scanline flood fill: every walkable run of a row is labelled as a whole and
+    // the runs it touches in the rows above and below are found with row scans,
+    // so the cost grows with the number of runs, not of tiles.
+    public void rebuild() {
+        wordLabel = new int[wordsPerRow * maxY];
+        Arrays.fill(wordLabel, NONE);
+        mixed = new int[64 * 16];
+        parent = new int[16];
+        size = new int[16];
+        bounds = new int[4 * 16];
+        mixedCount = 0;
+        labelCount = 0;
+        components = 0;
+        walkable = 0;
+        dirty = false;
+
+        long[] seen = new long[wordsPerRow * maxY];
+        int[] stack = new int[3 * 64];
+        for (int sy = 0; sy < maxY; sy++) {
+            for (int sx = map.nextWalkable(0, sy); sx < maxX; sx = map.nextWalkable(sx + 1, sy)) {
+                int end = map.nextWall(sx, sy) - 1;
+                if (!isSeen(seen, sx, sy)) {
+                    int label = newComponent(sx, sy);
+                    labelRun(seen, sy, sx, end, label);
+                    int sp = 0;
+                    stack[sp++] = sy;
+                    stack[sp++] = sx;
+                    stack[sp++] = end;
+                    while (sp > 0) {
+                        int b = stack[--sp];
+                        int a = stack[--sp];
+                        int y = stack[--sp];
+                        for (int ny = y - 1; ny <= y + 1; ny += 2) {
+                            if (ny < 0 || ny >= maxY) {
+                                continue;
+                            }
+                            // walkable runs of row ny that overlap a..b
+                            int x = map.isWall(a, ny) ? map.nextWalkable(a, ny) : map.previousWall(a, ny) + 1;
+                            while (x <= b) {
+                                int e = map.nextWall(x, ny) - 1;
+                                if (!isSeen(seen, x, ny)) {
+                                    labelRun(seen, ny, x, e, label);
+                                    if (sp + 3 > stack.length) {
+                                        stack = Arrays.copyOf(stack, stack.length * 2);
+                                    }
+                                    stack[sp++] = ny;
+                                    stack[sp++] = x;
+                                    stack[sp++] = e;
+                                }
+                                x = map.nextWalkable(e + 1, ny);
+                            }
+                        }
+                    }
+                }
+                sx = end;
+            }
+        }
+        labels = new Labels(wordLabel, mixed, parent);
+    }
+
+    // relabels the map if a tile was closed since the last relabel; call once per tick
+    public void refresh() {
+        if (dirty) {
+            rebuild();
+        }
+    }
+
+    // tile (x, y) of the map became walkable: it joins, and merges, the components around it
+    public void cellOpened(int x, int y) {
+        int root = -1;
+        for (int d = 0; d < 4; d++) {
+            int nx = x + (d == 0 ? -1 : d == 2 ? 1 : 0);
+            int ny = y + (d == 1 ? -1 : d == 3 ? 1 : 0);
+            if (map.isWalkable(nx, ny)) {
+                int other = find(parent, labelAt(wordLabel, mixed, nx, ny));
+                root = root == -1 ? other : union(root, other);
+            }
+        }
+        if (root == -1) {
+            root = newComponent(x, y);
+        }
+        setLabel(x, y, root);
+        size[root]++;
+        walkable++;
+        include(root, x, x, y);
+    }
+
+    // tile (x, y) of the map became a wall
+    public void cellClosed(int x, int y) {
+        int root = find(parent, labelAt(wordLabel, mixed, x, y));
+        size[root]--;
+        walkable--;
+        if (size[root] == 0) {
+            components--;
+            return;
+        }
+        int neighbours = 0;
+        for (int d = 0; d < 4; d++) {
+            if (map.isWalkable(x + (d == 0 ? -1 : d == 2 ? 1 : 0), y + (d == 1 ? -1 : d == 3 ? 1 : 0))) {
+                neighbours++;
+            }
+        }
+        // a dead end cannot split its component
+        if (neighbours > 1) {
+            dirty = true;
+        }
+    }
+
+    // merges the components of two root labels; returns the surviving root
+    private int union(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        if (size[a] < size[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        parent[b] = a;
+        size[a] += size[b];
+        size[b] = 0;
+        include(a, bounds[4 * b], bounds[4 * b + 2], bounds[4 * b + 1]);
+        include(a, bounds[4 * b], bounds[4 * b + 2], bounds[4 * b + 3]);
+        components--;
+        return a;
+    }
+
+    // gives the walkable tile (x, y) the label, splitting its word if needed
+    private void setLabel(int x, int y, int label) {
+        int i = y * wordsPerRow + (x >>> 6);
+        int current = wordLabel[i];
+        if (current == NONE) {
+            wordLabel[i] = label;
+        } else if (current >= 0 && find(parent, current) != label) {
+            int k = newMixed();
+            for (int bit = 0; bit < 64; bit++) {
+                int tx = (x & ~63) + bit;
+                mixed[k * 64 + bit] = tx < maxX && !map.isWall(tx, y) ? current : NONE;
+            }
+            mixed[k * 64 + (x & 63)] = label;
+            wordLabel[i] = -2 - k;
+        } else if (current < NONE) {
+            mixed[(-2 - current) * 64 + (x & 63)] = label;
+        }
+    }
+
+    private int newComponent(int x, int y) {
+        int label = labelCount++;
+        components++;
+        if (label == size.length) {
+            parent = Arrays.copyOf(parent, label * 2);
+            size = Arrays.copyOf(size, label * 2);
+            bounds = Arrays.copyOf(bounds, label * 8);
+            grown();
+        }
+        parent[label] = label;
+        size[label] = 0;
+        bounds[4 * label] = x;
+        bounds[4 * label + 1] = y;
+        bounds[4 * label + 2] = x;
+        bounds[4 * label + 3] = y;
+        return label;
+    }
+
+    private int newMixed() {
+        if ((mixedCount + 1) * 64 > mixed.length) {
+            mixed = Arrays.copyOf(mixed, mixed.length * 2);
+            grown();
+        }
+        return mixedCount++;
+    }
+
+    // parent or mixed was replaced by a bigger copy. Once published, the word
+    // labels are copied too: a reader still on the old arrays must never find a
+    // word that points past them, so published arrays are only written while current.
+    private void grown() {
+        if (labels != null && labels.wordLabel == wordLabel) {
+            wordLabel = wordLabel.clone();
+            labels = new Labels(wordLabel, mixed, parent);
+        }
+    }
+
+    // grows the bounding box of a root label to cover tiles a..b of row y
+    private void include(int label, int a, int b, int y) {
+        bounds[4 * label] = Math.min(bounds[4 * label], a);
+        bounds[4 * label + 1] = Math.min(bounds[4 * label + 1], y);
+        bounds[4 * label + 2] = Math.max(bounds[4 * label + 2], b);
+        bounds[4 * label + 3] = Math.max(bounds[4 * label + 3], y);
+    }
+
+    // gives tiles a..b of row y the label
+    private void labelRun(long[] seen, int y, int a, int b, int label) {
+        size[label] += b - a + 1;
+        walkable += b - a + 1;
+        include(label, a, b, y);
+        for (int w = a >>> 6; w <= b >>> 6; w++) {
+            int i = y * wordsPerRow + w;
+            int from = Math.max(a, w << 6) & 63;
+            int to = Math.min(b, (w << 6) + 63) & 63;
+            int current = wordLabel[i];
+            if (current == NONE) {
+                wordLabel[i] = label;
+            } else if (current >= 0 && current != label) {
+                // split word: the tiles seen so far are all `current`
+                int k = newMixed();
+                long seenBits = seen[i];
+                for (int bit = 0; bit < 64; bit++) {
+                    mixed[k * 64 + bit] = (seenBits & (1L << bit)) != 0 ? current : NONE;
+                }
+                Arrays.fill(mixed, k * 64 + from, k * 64 + to + 1, label);
+                wordLabel[i] = -2 - k;
+            } else if (current < NONE) {
+                int k = -2 - current;
+                Arrays.fill(mixed, k * 64 + from, k * 64 + to + 1, label);
+            }
+            seen[i] |= (-1L << from) & (-1L >>> (63 - to));
+        }
+    }
+
+    private boolean isSeen(long[] seen, int x, int y) {
+        return (seen[y * wordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    // label of the walkable tile (x, y), not necessarily its root
+    private int labelAt(int[] wordLabel, int[] mixed, int x, int y) {
+        int label = wordLabel[y * wordsPerRow + (x >>> 6)];
+        return label >= NONE ? label : mixed[(-2 - label) * 64 + (x & 63)];
+    }
+
+    // no path compression: readers on other threads must not write
+    private static int find(int[] parent, int label) {
+        while (parent[label] != label) {
+            label = parent[label];
+        }
+        return label;
+    }
+
+    // ------------------------------
+    // queries
+    // ------------------------------
+    // component label of (x, y), -1 for walls and tiles outside the map
+    public int componentOf(int x, int y) {
+        if (!map.isWalkable(x, y)) {
+            return -1;
+        }
+        Labels labels = this.labels;
+        int label = labelAt(labels.wordLabel, labels.mixed, x, y);
+        // a tile opened on the loop but not labelled yet
+        return label == NONE ? -1 : find(labels.parent, label);
+    }
+
+    public boolean isReachable(int srcX, int srcY, int dstX, int dstY) {
+        int label = componentOf(srcX, srcY);
+        return label != -1 && label == componentOf(dstX, dstY);
+    }
+
+    // uniformly random cell (y * maxX + x) reachable from (x, y), or -1 if (x, y) is not walkable
+    public int randomReachableCell(int x, int y, Random rand) {
+        int label = componentOf(x, y);
+        return label == -1 ? -1 : randomCell(label, rand);
+    }
+
+    // uniformly random walkable cell (y * maxX + x) anywhere on the map, or -1 if there is none
+    public int randomWalkableCell(Random rand) {
+        if (walkable == 0) {
+            return -1;
+        }
+        int k = rand.nextInt(walkable);
+        // merged labels have size 0
+        int label = 0;
+        while (k >= size[label]) {
+            k -= size[label++];
+        }
+        return randomCell(label, rand);
+    }
+
+    // Uniform over the tiles of the component: draws in its bounding box until one
+    // hits it, and counts through the box in row order if the component is too
+    // sparse in it for that to end quickly.
+    private int randomCell(int label, Random rand) {
+        int x0 = bounds[4 * label];
+        int y0 = bounds[4 * label + 1];
+        int x1 = bounds[4 * label + 2];
+        int y1 = bounds[4 * label + 3];
+        for (int t = 0; t < SAMPLE_TRIES; t++) {
+            int x = x0 + rand.nextInt(x1 - x0 + 1);
+            int y = y0 + rand.nextInt(y1 - y0 + 1);
+            if (!map.isWall(x, y) && find(parent, labelAt(wordLabel, mixed, x, y)) == label) {
+                return y * maxX + x;
+            }
+        }
+        int k = rand.nextInt(size[label]);
+        for (int y = y0; y <= y1; y++) {
+            for (int x = map.nextWalkable(x0, y); x <= x1; x = map.nextWalkable(x + 1, y)) {
+                if (find(parent, labelAt(wordLabel, mixed, x, y)) == label && k-- == 0) {
+                    return y * maxX + x;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public int getComponentCount() {
+        return this.components;
+    }
+
+    public int getComponentSize(int label) {
+        return size[label];
+    }
+
+    public int getWalkableCount() {
+        return this.walkable;
+    }
+}
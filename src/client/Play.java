@@ -1,11 +1,40 @@
 package client;
 
+import packets.NetIds;
+import packets.OnDespawnNpc;
+import packets.OnNpcMove;
+import packets.OnNpcMoveBatch;
+import packets.OnSnapshotAck;
+import packets.OnSnapshotDelta;
+import packets.OnSpawnNpc;
+import packets.PacketCodec;
+import packets.WorldState;
+
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Play {
     // List of all NPCs in the game
     private List<NPC> aiNpcs = new ArrayList<>();
+    // Same NPCs indexed by the slot part of their net ID (see packets.NetIds)
+    private NPC[] npcsBySlot = new NPC[64];
+    
+    // Reused for every decoded message (see handlePackets)
+    private final OnNpcMove moveIn = new OnNpcMove();
+    private final OnNpcMoveBatch moveBatchIn = new OnNpcMoveBatch();
+    private final OnSpawnNpc spawnIn = new OnSpawnNpc();
+    private final OnDespawnNpc despawnIn = new OnDespawnNpc();
+    private final OnSnapshotDelta snapshotIn = new OnSnapshotDelta();
+    
+    // Last received snapshots, by sequence % MAX_HISTORY; deltas are applied to one of these
+    private final WorldState[] snapshots = new WorldState[WorldState.MAX_HISTORY];
+    private WorldState snapshotScratch = new WorldState();
+    private final WorldState noSnapshot = new WorldState();
+    private WorldState shownSnapshot = noSnapshot;
+    private final OnSnapshotAck ackOut = new OnSnapshotAck();
+    private int ackedSnapshot = -1;
     
     // Camera and viewport for screen management (stubbed for now - will work with libGDX)
     private Object camera;  // OrthographicCamera in real implementation
@@ -26,20 +55,88 @@ public class Play {
         Sprite sprite = new Sprite("npc-sprite-" + id);
         NPC npc = new NPC(id, x, y, sprite);
         aiNpcs.add(npc);
+        int slot = NetIds.slot(id);
+        if (slot >= npcsBySlot.length) {
+            npcsBySlot = Arrays.copyOf(npcsBySlot, Math.max(slot + 1, npcsBySlot.length * 2));
+        }
+        // An older NPC still in the slot means its despawn was lost; drop it or it stays on screen
+        if (npcsBySlot[slot] != null) {
+            aiNpcs.remove(npcsBySlot[slot]);
+        }
+        npcsBySlot[slot] = npc;
         System.out.println("Added NPC " + id + " at position (" + x + ", " + y + ")");
     }
     
+    // Called by NetworkListener with bytes read from the server. The server frames
+    // every message the way NioServer does, a 4-byte big-endian length and then one
+    // message (see PacketCodec for the layouts). Applies every complete frame and
+    // leaves a trailing partial one in the buffer, position at its length, for the
+    // caller to compact and top up with the next read.
+    public void handlePackets(ByteBuffer in) {
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 0) {
+                throw new IllegalArgumentException("bad frame length " + length);
+            }
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+            int end = in.position() + 4 + length;
+            int limit = in.limit();
+            in.position(in.position() + 4).limit(end);
+            handlePacket(in);
+            in.limit(limit).position(end);
+        }
+    }
+
+    // one message, the whole of `in`
+    private void handlePacket(ByteBuffer in) {
+        switch (PacketCodec.peekType(in)) {
+            case PacketCodec.MOVE:
+                PacketCodec.decode(in, moveIn);
+                changeNpcLocationWithTiming(moveIn.netID, moveIn.x, moveIn.y);
+                break;
+            case PacketCodec.SPAWN:
+                PacketCodec.decode(in, spawnIn);
+                addNpc(spawnIn.id, spawnIn.x, spawnIn.y);
+                break;
+            case PacketCodec.DESPAWN:
+                PacketCodec.decode(in, despawnIn);
+                removeNpc(despawnIn.id);
+                break;
+            case PacketCodec.MOVE_BATCH:
+                PacketCodec.decode(in, moveBatchIn);
+                applyMoves(moveBatchIn);
+                break;
+            case PacketCodec.SNAPSHOT:
+                PacketCodec.decode(in, snapshotIn);
+                applySnapshot(snapshotIn);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown packet type " + PacketCodec.peekType(in));
+        }
+    }
+    
+    // Called by NetworkListener when server despawns an NPC (it left the player's area)
+    public void removeNpc(int id) {
+        NPC npc = getNpc(id);
+        if (npc != null) {
+            npcsBySlot[NetIds.slot(id)] = null;
+            aiNpcs.remove(npc);
+        }
+        System.out.println("Removed NPC " + id);
+    }
+    
     // Called by NetworkListener when server moves an NPC (simple version)
     public void changeNpcLocation(int id, float x, float y) {
         x *= 32;
         y *= 32;
 
-        for (NPC npc : aiNpcs) {
-            if (npc.getId() == id) {
-                npc.moveX = x;
-                npc.moveY = y;
-                System.out.println("Updated NPC " + id + " target to (" + x + ", " + y + ")");
-            }
+        NPC npc = getNpc(id);
+        if (npc != null) {
+            npc.moveX = x;
+            npc.moveY = y;
+            System.out.println("Updated NPC " + id + " target to (" + x + ", " + y + ")");
         }
     }
     
@@ -48,16 +145,104 @@ public class Play {
         x *= 32;
         y *= 32;
 
-        for (NPC npc : aiNpcs) {
-            if (npc.getId() == id) {
-                long now = System.currentTimeMillis();
-                npc.setReceiveDifference(now - npc.getLastReceive());
-                npc.setLastReceive(now);
-                npc.moveX = x;
-                npc.moveY = y;
-                System.out.println("Updated NPC " + id + " with timing: diff=" + npc.getReceiveDifference() + "ms");
+        NPC npc = getNpc(id);
+        if (npc != null) {
+            long now = System.currentTimeMillis();
+            npc.setReceiveDifference(now - npc.getLastReceive());
+            npc.setLastReceive(now);
+            npc.moveX = x;
+            npc.moveY = y;
+            System.out.println("Updated NPC " + id + " with timing: diff=" + npc.getReceiveDifference() + "ms");
+        }
+    }
+    
+    // Called by NetworkListener with all NPC moves of one server tick.
+    // Same as changeNpcLocationWithTiming per entry, in one pass with one clock read.
+    public void applyMoves(OnNpcMoveBatch batch) {
+        long now = System.currentTimeMillis();
+        int[] entries = batch.entries;
+        for (int i = 0, end = 3 * batch.count; i < end; i += 3) {
+            NPC npc = getNpc(entries[i]);
+            if (npc != null) {
+                setTarget(npc, now, entries[i + 1], entries[i + 2]);
+            }
+        }
+    }
+    
+    // Called by NetworkListener with a delta snapshot. Returns false when it was dropped
+    // (older than the shown one, or its base is no longer kept); otherwise the caller
+    // should acknowledge getSnapshotSequence().
+    public boolean applySnapshot(OnSnapshotDelta delta) {
+        if (delta.sequence <= shownSnapshot.sequence) {
+            return false;
+        }
+        WorldState base = noSnapshot;
+        if (delta.baseSequence >= 0) {
+            base = snapshots[delta.baseSequence % WorldState.MAX_HISTORY];
+            if (base == null || base.sequence != delta.baseSequence) {
+                return false;
+            }
+        }
+        WorldState next = snapshotScratch;
+        WorldState.apply(base, delta, next);
+        
+        // Spawn, move and despawn NPCs from the shown state to the new one
+        long now = System.currentTimeMillis();
+        WorldState shown = shownSnapshot;
+        int i = 0;
+        int j = 0;
+        while (i < shown.count || j < next.count) {
+            if (j == next.count || (i < shown.count && shown.ids[i] < next.ids[j])) {
+                removeNpc(shown.ids[i]);
+                i++;
+            } else if (i == shown.count || next.ids[j] < shown.ids[i]) {
+                addNpc(next.ids[j], next.xs[j], next.ys[j]);
+                j++;
+            } else {
+                if (shown.xs[i] != next.xs[j] || shown.ys[i] != next.ys[j]) {
+                    NPC npc = getNpc(next.ids[j]);
+                    if (npc != null) {
+                        setTarget(npc, now, next.xs[j], next.ys[j]);
+                    }
+                }
+                i++;
+                j++;
             }
         }
+        
+        int slot = delta.sequence % WorldState.MAX_HISTORY;
+        snapshotScratch = snapshots[slot] != null ? snapshots[slot] : new WorldState();
+        snapshots[slot] = next;
+        shownSnapshot = next;
+        return true;
+    }
+    
+    // Sequence of the newest applied snapshot (-1 before the first)
+    public int getSnapshotSequence() {
+        return shownSnapshot.sequence;
+    }
+    
+    // Called by NetworkListener after handlePackets: writes an OnSnapshotAck frame
+    // (4-byte length, then the message) for the newest snapshot if it is not acked yet.
+    // Returns false when there was nothing to acknowledge.
+    public boolean writeSnapshotAck(ByteBuffer out) {
+        if (shownSnapshot.sequence <= ackedSnapshot) {
+            return false;
+        }
+        int start = out.position();
+        out.putInt(0);
+        ackOut.sequence = shownSnapshot.sequence;
+        PacketCodec.encode(ackOut, out);
+        out.putInt(start, out.position() - start - 4);
+        ackedSnapshot = shownSnapshot.sequence;
+        return true;
+    }
+    
+    private void setTarget(NPC npc, long now, int x, int y) {
+        npc.setReceiveDifference(now - npc.getLastReceive());
+        npc.setLastReceive(now);
+        npc.moveX = x * 32;
+        npc.moveY = y * 32;
     }
     
     // Called every frame to render all NPCs
@@ -76,13 +261,14 @@ public class Play {
     }
     
     // Get NPC by ID (helper method)
+    // Direct slot lookup; a stale ID whose slot was reused by a newer NPC finds nothing
     public NPC getNpc(int id) {
-        for (NPC npc : aiNpcs) {
-            if (npc.getId() == id) {
-                return npc;
-            }
+        int slot = NetIds.slot(id);
+        if (slot >= npcsBySlot.length) {
+            return null;
         }
-        return null;
+        NPC npc = npcsBySlot[slot];
+        return npc != null && npc.getId() == id ? npc : null;
     }
     
     // Get all NPCs
@@ -0,0 +1,27 @@
+package packets;
+
+// Layout of NPC network ids, shared by server and client.
+// An id is (generation << SLOT_BITS) | slot. The slot is a dense index that
+// both sides use directly as an array index; the generation changes every
+// time a slot is reused, so a packet for a despawned NPC never matches the
+// NPC that got its slot afterwards.
+public final class NetIds {
+    public static final int SLOT_BITS = 20;
+    public static final int MAX_SLOTS = 1 << SLOT_BITS;
+    public static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+
+    private NetIds() {
+    }
+
+    public static int make(int generation, int slot) {
+        return (generation & GENERATION_MASK) << SLOT_BITS | slot;
+    }
+
+    public static int slot(int netId) {
+        return netId & (MAX_SLOTS - 1);
+    }
+
+    public static int generation(int netId) {
+        return netId >>> SLOT_BITS;
+    }
+}
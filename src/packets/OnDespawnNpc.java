@@ -0,0 +1,10 @@
+package packets;
+
+public class OnDespawnNpc implements Packet {
+    public int id;
+
+    @Override
+    public void reset() {
+        id = 0;
+    }
+}
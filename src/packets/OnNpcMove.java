@@ -1,7 +1,14 @@
 package packets;
 
-public class OnNpcMove {
+public class OnNpcMove implements Packet {
     public int netID;
     public float x;
     public float y;
+
+    @Override
+    public void reset() {
+        netID = 0;
+        x = 0;
+        y = 0;
+    }
 }
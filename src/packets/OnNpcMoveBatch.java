@@ -0,0 +1,56 @@
+package packets;
+
+import java.util.Arrays;
+
+// All NPC moves of one game tick in a single packet.
+// entries holds count packed (netId, x, y) triples, positions in tiles.
+public class OnNpcMoveBatch implements Packet {
+    public int count;
+    public int[] entries = new int[3 * 64];
+
+    public void add(int netId, int x, int y) {
+        int at = 3 * count;
+        if (at == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        entries[at] = netId;
+        entries[at + 1] = x;
+        entries[at + 2] = y;
+        count++;
+    }
+
+    // drops the entries of one NPC, keeping the order of the rest
+    public void remove(int netId) {
+        int kept = 0;
+        for (int i = 0, end = 3 * count; i < end; i += 3) {
+            if (entries[i] != netId) {
+                entries[kept] = entries[i];
+                entries[kept + 1] = entries[i + 1];
+                entries[kept + 2] = entries[i + 2];
+                kept += 3;
+            }
+        }
+        count = kept / 3;
+    }
+
+    // makes room for `count` entries, dropping the current ones
+    public void reset(int count) {
+        if (entries.length < 3 * count) {
+            entries = new int[Math.max(3 * count, entries.length * 2)];
+        }
+        this.count = 0;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    @Override
+    public void reset() {
+        clear();
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+}
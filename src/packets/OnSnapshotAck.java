@@ -0,0 +1,11 @@
+package packets;
+
+// Client to server: the newest snapshot the client has applied
+public class OnSnapshotAck implements Packet {
+    public int sequence;
+
+    @Override
+    public void reset() {
+        sequence = 0;
+    }
+}
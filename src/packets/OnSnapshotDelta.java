@@ -0,0 +1,53 @@
+package packets;
+
+import java.util.Arrays;
+
+// Changes from snapshot baseSequence (-1: from nothing) to snapshot sequence,
+// one entry per NPC that spawned, moved or despawned, sorted by id. `fields`
+// says which parts of an entry are set; xs/ys are only meaningful under X/Y.
+public class OnSnapshotDelta implements Packet {
+    public static final int SPAWN = 1;
+    public static final int X = 2;
+    public static final int Y = 4;
+    public static final int DESPAWN = 8;
+
+    public int sequence;
+    public int baseSequence = -1;
+    public int count;
+    public int[] ids = new int[64];
+    public byte[] fields = new byte[64];
+    public int[] xs = new int[64];
+    public int[] ys = new int[64];
+
+    public void clear(int sequence, int baseSequence) {
+        this.sequence = sequence;
+        this.baseSequence = baseSequence;
+        this.count = 0;
+    }
+
+    @Override
+    public void reset() {
+        clear(0, -1);
+    }
+
+    public void add(int id, int fields, int x, int y) {
+        if (count == ids.length) {
+            reserve(count * 2);
+        }
+        ids[count] = id;
+        this.fields[count] = (byte) fields;
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    // makes room for `capacity` entries, keeping the current ones
+    public void reserve(int capacity) {
+        if (ids.length < capacity) {
+            ids = Arrays.copyOf(ids, capacity);
+            fields = Arrays.copyOf(fields, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+    }
+}
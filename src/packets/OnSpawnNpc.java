@@ -1,7 +1,14 @@
 package packets;
 
-public class OnSpawnNpc {
+public class OnSpawnNpc implements Packet {
     public int id;
     public float x;
     public float y;
+
+    @Override
+    public void reset() {
+        id = 0;
+        x = 0;
+        y = 0;
+    }
 }
@@ -0,0 +1,7 @@
+package packets;
+
+// A message that can be reused, see PacketPool
+public interface Packet {
+    // back to the state of a new instance
+    void reset();
+}
@@ -0,0 +1,237 @@
+package packets;
+
+import java.nio.ByteBuffer;
+
+// Hand-written binary layouts for the NPC packets.
+// Every message is a type byte followed by the fields in a fixed order:
+//
+//   MOVE     type, varint netID, u16 x, u16 y
+//   SPAWN    type, varint id,    u16 x, u16 y
+//   DESPAWN  type, varint id
+//   BATCH    type, varint count, count * (varint netID, u16 x, u16 y)
+//   SNAPSHOT type, varint sequence, varint baseSequence + 1, varint count,
+//            count * (varint id gap, u8 fields, [u16 x], [u16 y])
+//   ACK      type, varint sequence
+//
+// Ids are unsigned LEB128 varints, positions are whole tiles quantized to
+// 16 bits. Encoding writes at the buffer's position and decoding fills an
+// existing packet, so neither allocates. A move is 6 to 10 bytes, a batch
+// entry 5 to 9. Snapshot ids are sorted, so each is sent as the gap to the
+// previous one, and x/y only when the fields byte says they changed.
+public final class PacketCodec {
+    public static final byte MOVE = 1;
+    public static final byte SPAWN = 2;
+    public static final byte DESPAWN = 3;
+    public static final byte MOVE_BATCH = 4;
+    public static final byte SNAPSHOT = 5;
+    public static final byte SNAPSHOT_ACK = 6;
+
+    // largest encoded single message, for sizing buffers
+    public static final int MAX_MESSAGE_BYTES = 1 + 5 + 2 + 2;
+    // largest encoded batch entry, see maxBatchBytes
+    public static final int MAX_BATCH_ENTRY_BYTES = 5 + 2 + 2;
+
+    private PacketCodec() {
+    }
+
+    // ------------------------------
+    // encode
+    // ------------------------------
+    // for callers that only know the packet as an Object (transports)
+    public static void encode(Object packet, ByteBuffer out) {
+        if (packet instanceof OnNpcMoveBatch) {
+            encode((OnNpcMoveBatch) packet, out);
+        } else if (packet instanceof OnSnapshotDelta) {
+            encode((OnSnapshotDelta) packet, out);
+        } else if (packet instanceof OnNpcMove) {
+            encode((OnNpcMove) packet, out);
+        } else if (packet instanceof OnSpawnNpc) {
+            encode((OnSpawnNpc) packet, out);
+        } else if (packet instanceof OnDespawnNpc) {
+            encode((OnDespawnNpc) packet, out);
+        } else if (packet instanceof OnSnapshotAck) {
+            encode((OnSnapshotAck) packet, out);
+        } else {
+            throw new IllegalArgumentException("no binary layout for " + packet.getClass().getName());
+        }
+    }
+
+    public static void encode(OnNpcMove packet, ByteBuffer out) {
+        out.put(MOVE);
+        writeVarInt(out, packet.netID);
+        writeTile(out, packet.x);
+        writeTile(out, packet.y);
+    }
+
+    public static void encode(OnSpawnNpc packet, ByteBuffer out) {
+        out.put(SPAWN);
+        writeVarInt(out, packet.id);
+        writeTile(out, packet.x);
+        writeTile(out, packet.y);
+    }
+
+    public static void encode(OnDespawnNpc packet, ByteBuffer out) {
+        out.put(DESPAWN);
+        writeVarInt(out, packet.id);
+    }
+
+    public static void encode(OnNpcMoveBatch packet, ByteBuffer out) {
+        out.put(MOVE_BATCH);
+        writeVarInt(out, packet.count);
+        int[] entries = packet.entries;
+        for (int i = 0, end = 3 * packet.count; i < end; i += 3) {
+            writeVarInt(out, entries[i]);
+            writeTile(out, entries[i + 1]);
+            writeTile(out, entries[i + 2]);
+        }
+    }
+
+    public static void encode(OnSnapshotDelta packet, ByteBuffer out) {
+        out.put(SNAPSHOT);
+        writeVarInt(out, packet.sequence);
+        writeVarInt(out, packet.baseSequence + 1);
+        writeVarInt(out, packet.count);
+        int previous = 0;
+        for (int i = 0; i < packet.count; i++) {
+            int fields = packet.fields[i];
+            writeVarInt(out, packet.ids[i] - previous);
+            previous = packet.ids[i];
+            out.put((byte) fields);
+            if ((fields & OnSnapshotDelta.X) != 0) {
+                writeTile(out, packet.xs[i]);
+            }
+            if ((fields & OnSnapshotDelta.Y) != 0) {
+                writeTile(out, packet.ys[i]);
+            }
+        }
+    }
+
+    public static void encode(OnSnapshotAck packet, ByteBuffer out) {
+        out.put(SNAPSHOT_ACK);
+        writeVarInt(out, packet.sequence);
+    }
+
+    // upper bound on the encoded size of a batch with `count` entries
+    public static int maxBatchBytes(int count) {
+        return 1 + 5 + count * MAX_BATCH_ENTRY_BYTES;
+    }
+
+    // ------------------------------
+    // decode
+    // ------------------------------
+    // type byte of the next message, without consuming it
+    public static byte peekType(ByteBuffer in) {
+        return in.get(in.position());
+    }
+
+    public static void decode(ByteBuffer in, OnNpcMove into) {
+        expectType(in, MOVE);
+        into.netID = readVarInt(in);
+        into.x = readTile(in);
+        into.y = readTile(in);
+    }
+
+    public static void decode(ByteBuffer in, OnSpawnNpc into) {
+        expectType(in, SPAWN);
+        into.id = readVarInt(in);
+        into.x = readTile(in);
+        into.y = readTile(in);
+    }
+
+    public static void decode(ByteBuffer in, OnDespawnNpc into) {
+        expectType(in, DESPAWN);
+        into.id = readVarInt(in);
+    }
+
+    // reuses into.entries when it is big enough
+    public static void decode(ByteBuffer in, OnNpcMoveBatch into) {
+        expectType(in, MOVE_BATCH);
+        int count = readVarInt(in);
+        // every entry takes at least 5 bytes, so a corrupt count cannot force a huge allocation
+        if (count < 0 || count > in.remaining() / 5) {
+            throw new IllegalArgumentException("bad batch size " + count);
+        }
+        into.reset(count);
+        int[] entries = into.entries;
+        for (int i = 0, end = 3 * count; i < end; i += 3) {
+            entries[i] = readVarInt(in);
+            entries[i + 1] = in.getShort() & 0xFFFF;
+            entries[i + 2] = in.getShort() & 0xFFFF;
+        }
+        into.count = count;
+    }
+
+    // reuses the arrays of `into` when they are big enough
+    public static void decode(ByteBuffer in, OnSnapshotDelta into) {
+        expectType(in, SNAPSHOT);
+        int sequence = readVarInt(in);
+        int baseSequence = readVarInt(in) - 1;
+        int count = readVarInt(in);
+        // every entry takes at least 2 bytes
+        if (count < 0 || count > in.remaining() / 2) {
+            throw new IllegalArgumentException("bad snapshot size " + count);
+        }
+        into.clear(sequence, baseSequence);
+        into.reserve(count);
+        int id = 0;
+        for (int i = 0; i < count; i++) {
+            id += readVarInt(in);
+            int fields = in.get();
+            into.ids[i] = id;
+            into.fields[i] = (byte) fields;
+            into.xs[i] = (fields & OnSnapshotDelta.X) != 0 ? in.getShort() & 0xFFFF : 0;
+            into.ys[i] = (fields & OnSnapshotDelta.Y) != 0 ? in.getShort() & 0xFFFF : 0;
+        }
+        into.count = count;
+    }
+
+    public static void decode(ByteBuffer in, OnSnapshotAck into) {
+        expectType(in, SNAPSHOT_ACK);
+        into.sequence = readVarInt(in);
+    }
+
+    private static void expectType(ByteBuffer in, byte type) {
+        byte actual = in.get();
+        if (actual != type) {
+            throw new IllegalArgumentException("expected packet type " + type + " but got " + actual);
+        }
+    }
+
+    // ------------------------------
+    // fields
+    // ------------------------------
+    public static void writeVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    public static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("varint longer than 5 bytes");
+    }
+
+    public static void writeTile(ByteBuffer out, float coordinate) {
+        writeTile(out, Math.round(coordinate));
+    }
+
+    public static void writeTile(ByteBuffer out, int tile) {
+        if (tile < 0 || tile > 0xFFFF) {
+            throw new IllegalArgumentException("tile coordinate out of 16-bit range: " + tile);
+        }
+        out.putShort((short) tile);
+    }
+
+    public static float readTile(ByteBuffer in) {
+        return in.getShort() & 0xFFFF;
+    }
+}
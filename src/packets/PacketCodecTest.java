@@ -0,0 +1,149 @@
+package packets;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+// Round-trips the varint and u16 fields at their byte-length boundaries, then
+// every message type, checking that decoding consumes exactly what was encoded.
+public class PacketCodecTest {
+
+    private static final int[] VARINTS = {
+            0, 1, 127, 128, 16383, 16384, (1 << 21) - 1, 1 << 21, (1 << 28) - 1, 1 << 28,
+            Integer.MAX_VALUE, -1, Integer.MIN_VALUE
+    };
+    private static final int[] VARINT_BYTES = {1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 5, 5};
+    private static final int[] TILES = {0, 1, 255, 256, 32767, 32768, 65534, 65535};
+
+    public static void main(String[] args) {
+        System.out.println("=== Testing PacketCodec ===\n");
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        Random rand = new Random(5);
+
+        System.out.println("--- Test 1: varints ---");
+        for (int i = 0; i < VARINTS.length; i++) {
+            buffer.clear();
+            PacketCodec.writeVarInt(buffer, VARINTS[i]);
+            check(buffer.position() == VARINT_BYTES[i], VARINTS[i] + " takes " + VARINT_BYTES[i] + " bytes");
+            buffer.flip();
+            check(PacketCodec.readVarInt(buffer) == VARINTS[i], VARINTS[i] + " round-trips");
+            check(!buffer.hasRemaining(), VARINTS[i] + " is read to the last byte");
+        }
+        for (int i = 0; i < 100_000; i++) {
+            int value = rand.nextInt() >>> rand.nextInt(32);
+            buffer.clear();
+            PacketCodec.writeVarInt(buffer, value);
+            buffer.flip();
+            check(PacketCodec.readVarInt(buffer) == value && !buffer.hasRemaining(), value + " round-trips");
+        }
+        buffer.clear();
+        buffer.put(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0}).flip();
+        check(throwsIllegalArgument(() -> PacketCodec.readVarInt(buffer)), "a 6-byte varint is rejected");
+        System.out.println("  ok: boundaries and 100000 random values");
+
+        System.out.println("--- Test 2: u16 tiles ---");
+        for (int tile : TILES) {
+            buffer.clear();
+            PacketCodec.writeTile(buffer, tile);
+            PacketCodec.writeTile(buffer, (float) tile);
+            check(buffer.position() == 4, tile + " takes 2 bytes");
+            buffer.flip();
+            check(PacketCodec.readTile(buffer) == tile && PacketCodec.readTile(buffer) == tile, tile + " round-trips");
+        }
+        buffer.clear();
+        PacketCodec.writeTile(buffer, 6.6f);
+        buffer.flip();
+        check(PacketCodec.readTile(buffer) == 7, "float positions round to the nearest tile");
+        check(throwsIllegalArgument(() -> PacketCodec.writeTile(buffer.clear(), -1)), "-1 is rejected");
+        check(throwsIllegalArgument(() -> PacketCodec.writeTile(buffer.clear(), 65536)), "65536 is rejected");
+        System.out.println("  ok: " + TILES.length + " tiles, rounding and range checks");
+
+        System.out.println("--- Test 3: messages ---");
+        OnNpcMove move = new OnNpcMove();
+        move.netID = Integer.MAX_VALUE;
+        move.x = 65535;
+        move.y = 0;
+        OnNpcMove moveOut = new OnNpcMove();
+        roundTrip(buffer, move, () -> PacketCodec.decode(buffer, moveOut));
+        check(moveOut.netID == move.netID && moveOut.x == move.x && moveOut.y == move.y, "move");
+        check(buffer.limit() <= PacketCodec.MAX_MESSAGE_BYTES, "move fits MAX_MESSAGE_BYTES");
+
+        OnSpawnNpc spawn = new OnSpawnNpc();
+        spawn.id = NetIds.make(NetIds.GENERATION_MASK, NetIds.MAX_SLOTS - 1);
+        spawn.x = 12;
+        spawn.y = 40000;
+        OnSpawnNpc spawnOut = new OnSpawnNpc();
+        roundTrip(buffer, spawn, () -> PacketCodec.decode(buffer, spawnOut));
+        check(spawnOut.id == spawn.id && spawnOut.x == spawn.x && spawnOut.y == spawn.y, "spawn");
+
+        OnDespawnNpc despawn = new OnDespawnNpc();
+        despawn.id = 300;
+        OnDespawnNpc despawnOut = new OnDespawnNpc();
+        roundTrip(buffer, despawn, () -> PacketCodec.decode(buffer, despawnOut));
+        check(despawnOut.id == despawn.id, "despawn");
+
+        OnNpcMoveBatch batch = new OnNpcMoveBatch();
+        for (int i = 0; i < 1000; i++) {
+            batch.add(rand.nextInt() >>> rand.nextInt(32), rand.nextInt(65536), rand.nextInt(65536));
+        }
+        OnNpcMoveBatch batchOut = new OnNpcMoveBatch();
+        roundTrip(buffer, batch, () -> PacketCodec.decode(buffer, batchOut));
+        check(batchOut.count == batch.count, "batch count");
+        for (int i = 0; i < 3 * batch.count; i++) {
+            check(batchOut.entries[i] == batch.entries[i], "batch entry " + i / 3);
+        }
+        check(buffer.limit() <= PacketCodec.maxBatchBytes(batch.count), "batch fits maxBatchBytes");
+
+        OnSnapshotDelta snapshot = new OnSnapshotDelta();
+        snapshot.clear(70000, -1);
+        int id = 0;
+        for (int i = 0; i < 500; i++) {
+            id += 1 + rand.nextInt(5000);
+            int fields = rand.nextInt(16);
+            snapshot.add(id, fields, (fields & OnSnapshotDelta.X) != 0 ? rand.nextInt(65536) : 0,
+                    (fields & OnSnapshotDelta.Y) != 0 ? rand.nextInt(65536) : 0);
+        }
+        OnSnapshotDelta snapshotOut = new OnSnapshotDelta();
+        roundTrip(buffer, snapshot, () -> PacketCodec.decode(buffer, snapshotOut));
+        check(snapshotOut.sequence == snapshot.sequence && snapshotOut.baseSequence == -1, "snapshot header");
+        check(snapshotOut.count == snapshot.count, "snapshot count");
+        for (int i = 0; i < snapshot.count; i++) {
+            check(snapshotOut.ids[i] == snapshot.ids[i] && snapshotOut.fields[i] == snapshot.fields[i]
+                    && snapshotOut.xs[i] == snapshot.xs[i] && snapshotOut.ys[i] == snapshot.ys[i], "snapshot entry " + i);
+        }
+
+        OnSnapshotAck ack = new OnSnapshotAck();
+        ack.sequence = 70000;
+        OnSnapshotAck ackOut = new OnSnapshotAck();
+        roundTrip(buffer, ack, () -> PacketCodec.decode(buffer, ackOut));
+        check(ackOut.sequence == ack.sequence, "ack");
+        System.out.println("  ok: move, spawn, despawn, batch of " + batch.count + ", snapshot of "
+                + snapshot.count + " and ack");
+
+        System.out.println("\n✅ PacketCodec test completed successfully!");
+    }
+
+    // encodes through the Object overload (what the transports call), then decodes
+    private static void roundTrip(ByteBuffer buffer, Object packet, Runnable decode) {
+        buffer.clear();
+        PacketCodec.encode(packet, buffer);
+        buffer.flip();
+        decode.run();
+        check(!buffer.hasRemaining(), packet.getClass().getSimpleName() + " is decoded to the last byte");
+        buffer.rewind();
+    }
+
+    private static boolean throwsIllegalArgument(Runnable code) {
+        try {
+            code.run();
+            return false;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new IllegalStateException("FAILED: " + what);
+        }
+    }
+}
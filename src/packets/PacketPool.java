@@ -0,0 +1,103 @@
+package packets;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// Free lists of reusable packets, one per thread so acquire and release never
+// contend. A packet is acquired, filled, sent (transports serialize during
+// send) and released; it may be released on another thread than the one
+// that acquired it. With assertions enabled (-ea) every acquired packet is
+// tracked: one that is garbage collected without being released is reported
+// with the stack of its acquire, and releasing a packet twice throws.
+public final class PacketPool<T extends Packet> {
+    public static final PacketPool<OnNpcMove> MOVE = new PacketPool<>(OnNpcMove::new);
+    public static final PacketPool<OnSpawnNpc> SPAWN = new PacketPool<>(OnSpawnNpc::new);
+    public static final PacketPool<OnDespawnNpc> DESPAWN = new PacketPool<>(OnDespawnNpc::new);
+    public static final PacketPool<OnNpcMoveBatch> MOVE_BATCH = new PacketPool<>(OnNpcMoveBatch::new);
+    public static final PacketPool<OnSnapshotDelta> SNAPSHOT = new PacketPool<>(OnSnapshotDelta::new);
+    public static final PacketPool<OnSnapshotAck> SNAPSHOT_ACK = new PacketPool<>(OnSnapshotAck::new);
+
+    private static final boolean TRACK = PacketPool.class.desiredAssertionStatus();
+    // a burst must not pin its packets forever; beyond this, released packets are dropped
+    private static final int MAX_FREE_PER_THREAD = 256;
+
+    private final Supplier<T> factory;
+    private final ThreadLocal<ArrayDeque<T>> free = ThreadLocal.withInitial(ArrayDeque::new);
+
+    // leak tracking, only used when TRACK
+    private static final class Tracker extends WeakReference<Packet> {
+        final Throwable acquiredAt;
+
+        Tracker(Packet packet, ReferenceQueue<Packet> queue) {
+            super(packet, queue);
+            this.acquiredAt = new Throwable("acquired here");
+        }
+    }
+
+    private final ReferenceQueue<Packet> collected = new ReferenceQueue<>();
+    private final Set<Tracker> live = ConcurrentHashMap.newKeySet();
+    private final Map<Packet, Tracker> trackerOf = new WeakHashMap<>();
+
+    public PacketPool(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    public T acquire() {
+        T packet = free.get().pollLast();
+        if (packet == null) {
+            packet = factory.get();
+        }
+        if (TRACK) {
+            reportLeaks();
+            Tracker tracker = new Tracker(packet, collected);
+            live.add(tracker);
+            synchronized (trackerOf) {
+                trackerOf.put(packet, tracker);
+            }
+        }
+        return packet;
+    }
+
+    // the caller must not touch the packet afterwards
+    public void release(T packet) {
+        if (TRACK) {
+            Tracker tracker;
+            synchronized (trackerOf) {
+                tracker = trackerOf.remove(packet);
+            }
+            if (tracker == null) {
+                throw new IllegalStateException("packet released twice or not acquired from this pool");
+            }
+            live.remove(tracker);
+            tracker.clear();
+        }
+        packet.reset();
+        ArrayDeque<T> list = free.get();
+        if (list.size() < MAX_FREE_PER_THREAD) {
+            list.addLast(packet);
+        }
+    }
+
+    // packets that were collected while still acquired
+    private void reportLeaks() {
+        Object reference;
+        while ((reference = collected.poll()) != null) {
+            Tracker tracker = (Tracker) reference;
+            if (live.remove(tracker)) {
+                System.err.println("LEAK: pooled packet was never released");
+                tracker.acquiredAt.printStackTrace();
+            }
+        }
+    }
+
+    // packets acquired and not yet released (0 unless assertions are enabled)
+    public int getLiveCount() {
+        return live.size();
+    }
+}
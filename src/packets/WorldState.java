@@ -0,0 +1,91 @@
+package packets;
+
+import java.util.Arrays;
+
+// Positions of every NPC a connection knows about at one snapshot, sorted by
+// net id. Server and client keep rings of these: the server diffs the newest
+// state against the one a client acknowledged, the client applies the delta
+// to its copy of that same state.
+public final class WorldState {
+    // states a client keeps; the server may not keep more, or a client could be
+    // sent a delta against a base it has already overwritten
+    public static final int MAX_HISTORY = 32;
+
+    public int sequence = -1;
+    public int count;
+    public int[] ids = new int[64];
+    public int[] xs = new int[64];
+    public int[] ys = new int[64];
+
+    public void clear(int sequence) {
+        this.sequence = sequence;
+        this.count = 0;
+    }
+
+    // entries must be added in increasing id order
+    public void add(int id, int x, int y) {
+        if (count == ids.length) {
+            int capacity = count * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        ids[count] = id;
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    // writes the changes from `base` to `current` into `out`
+    public static void diff(WorldState base, WorldState current, OnSnapshotDelta out) {
+        out.clear(current.sequence, base.sequence);
+        int i = 0;
+        int j = 0;
+        while (i < base.count || j < current.count) {
+            if (j == current.count || (i < base.count && base.ids[i] < current.ids[j])) {
+                out.add(base.ids[i], OnSnapshotDelta.DESPAWN, 0, 0);
+                i++;
+            } else if (i == base.count || current.ids[j] < base.ids[i]) {
+                out.add(current.ids[j], OnSnapshotDelta.SPAWN | OnSnapshotDelta.X | OnSnapshotDelta.Y,
+                        current.xs[j], current.ys[j]);
+                j++;
+            } else {
+                int fields = (base.xs[i] != current.xs[j] ? OnSnapshotDelta.X : 0)
+                        | (base.ys[i] != current.ys[j] ? OnSnapshotDelta.Y : 0);
+                if (fields != 0) {
+                    out.add(current.ids[j], fields, current.xs[j], current.ys[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    // rebuilds the state `delta` was made from by applying it to `base`; out must not be base
+    public static void apply(WorldState base, OnSnapshotDelta delta, WorldState out) {
+        out.clear(delta.sequence);
+        int i = 0;
+        int k = 0;
+        while (i < base.count || k < delta.count) {
+            if (k == delta.count || (i < base.count && base.ids[i] < delta.ids[k])) {
+                out.add(base.ids[i], base.xs[i], base.ys[i]);
+                i++;
+            } else if (i == base.count || delta.ids[k] < base.ids[i]) {
+                if ((delta.fields[k] & OnSnapshotDelta.SPAWN) == 0) {
+                    throw new IllegalArgumentException("delta changes unknown NPC " + delta.ids[k]);
+                }
+                out.add(delta.ids[k], delta.xs[k], delta.ys[k]);
+                k++;
+            } else {
+                int fields = delta.fields[k];
+                if ((fields & OnSnapshotDelta.DESPAWN) == 0) {
+                    out.add(base.ids[i],
+                            (fields & OnSnapshotDelta.X) != 0 ? delta.xs[k] : base.xs[i],
+                            (fields & OnSnapshotDelta.Y) != 0 ? delta.ys[k] : base.ys[i]);
+                }
+                i++;
+                k++;
+            }
+        }
+    }
+}